@@ -0,0 +1,279 @@
+package ch.swissqr.barcode;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * Renders a ZXing BitMatrix directly into the DataBuffer of a TYPE_BYTE_BINARY
+ * or TYPE_BYTE_GRAY image. We process the dark modules as runs per row and copy
+ * identical rows, so no Graphics2D calls are needed. Scaled color images with an
+ * overlay in the center are rendered in one pass as well.
+ *
+ * @author pschatzmann
+ */
+public class BitMatrixRenderer {
+	private static final Logger LOG = Logger.getLogger(BitMatrixRenderer.class);
+	private static final AtomicLong renderedPixels = new AtomicLong();
+	private static final AtomicLong renderNanos = new AtomicLong();
+	private int imageType = BufferedImage.TYPE_BYTE_BINARY;
+
+	/**
+	 * Renderer which creates 1 bit TYPE_BYTE_BINARY images
+	 */
+	public BitMatrixRenderer() {
+	}
+
+	/**
+	 * <p>Constructor for BitMatrixRenderer.</p>
+	 *
+	 * @param imageType BufferedImage.TYPE_BYTE_BINARY or BufferedImage.TYPE_BYTE_GRAY
+	 */
+	public BitMatrixRenderer(int imageType) {
+		if (imageType != BufferedImage.TYPE_BYTE_BINARY && imageType != BufferedImage.TYPE_BYTE_GRAY) {
+			throw new IllegalArgumentException("Unsupported image type: " + imageType);
+		}
+		this.imageType = imageType;
+	}
+
+	/**
+	 * Creates a new image for the indicated matrix: set bits are black, all other
+	 * pixels are white
+	 *
+	 * @param matrix a {@link com.google.zxing.common.BitMatrix} object
+	 * @return a {@link java.awt.image.BufferedImage} object
+	 */
+	public BufferedImage render(BitMatrix matrix) {
+		BufferedImage image = new BufferedImage(matrix.getWidth(), matrix.getHeight(), imageType);
+		render(matrix, image);
+		return image;
+	}
+
+	/**
+	 * Renders the matrix into an existing image with the same dimensions and the
+	 * image type of this renderer
+	 *
+	 * @param matrix a {@link com.google.zxing.common.BitMatrix} object
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 */
+	public void render(BitMatrix matrix, BufferedImage image) {
+		long start = System.nanoTime();
+		int width = matrix.getWidth();
+		int height = matrix.getHeight();
+		if (image.getType() != imageType || image.getWidth() != width || image.getHeight() != height) {
+			throw new IllegalArgumentException("The image does not match the matrix dimensions or image type");
+		}
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		int stride = imageType == BufferedImage.TYPE_BYTE_BINARY
+				? ((MultiPixelPackedSampleModel) image.getSampleModel()).getScanlineStride()
+				: width;
+
+		// everything is white: for TYPE_BYTE_BINARY bit 1 is white
+		Arrays.fill(data, 0, stride * height, (byte) 0xFF);
+
+		BitArray row = new BitArray(width);
+		BitArray previous = new BitArray(width);
+		for (int y = 0; y < height; y++) {
+			row = matrix.getRow(y, row);
+			int offset = y * stride;
+			if (y > 0 && row.equals(previous)) {
+				System.arraycopy(data, offset - stride, data, offset, stride);
+			} else {
+				int x = row.getNextSet(0);
+				while (x < width) {
+					int end = row.getNextUnset(x);
+					if (imageType == BufferedImage.TYPE_BYTE_BINARY) {
+						clearBits(data, offset, x, end);
+					} else {
+						Arrays.fill(data, offset + x, offset + end, (byte) 0);
+					}
+					x = row.getNextSet(end);
+				}
+			}
+			BitArray tmp = previous;
+			previous = row;
+			row = tmp;
+		}
+		record((long) width * height, System.nanoTime() - start);
+	}
+
+	/**
+	 * Renders a matrix with one pixel per module scaled to the indicated size into a
+	 * TYPE_3BYTE_BGR image and composites the overlay in the center in the same pass.
+	 * The modules are sampled at the pixel centers, so no intermediate image is
+	 * needed.
+	 *
+	 * @param modules a {@link com.google.zxing.common.BitMatrix} object with one pixel per module
+	 * @param size the width and height of the result in pixels
+	 * @param overlay a {@link java.awt.image.BufferedImage} object of TYPE_INT_ARGB or null
+	 * @return a {@link java.awt.image.BufferedImage} object
+	 */
+	public BufferedImage renderWithOverlay(BitMatrix modules, int size, BufferedImage overlay) {
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+		renderWithOverlay(modules, overlay, image);
+		return image;
+	}
+
+	/**
+	 * Renders a matrix with one pixel per module scaled to the size of the existing
+	 * square TYPE_3BYTE_BGR image and composites the overlay in the center
+	 *
+	 * @param modules a {@link com.google.zxing.common.BitMatrix} object with one pixel per module
+	 * @param overlay a {@link java.awt.image.BufferedImage} object of TYPE_INT_ARGB or null
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 */
+	public void renderWithOverlay(BitMatrix modules, BufferedImage overlay, BufferedImage image) {
+		long start = System.nanoTime();
+		int n = modules.getWidth();
+		int size = image.getWidth();
+		if (image.getType() != BufferedImage.TYPE_3BYTE_BGR || image.getHeight() != size) {
+			throw new IllegalArgumentException("The image must be a square of TYPE_3BYTE_BGR");
+		}
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		int stride = size * 3;
+		Arrays.fill(data, (byte) 0xFF);
+
+		// module index for each pixel column and row
+		int[] moduleIndex = new int[size];
+		for (int i = 0; i < size; i++) {
+			moduleIndex[i] = (int) ((i + 0.5) * n / size);
+		}
+
+		int[] overlayData = null;
+		int overlayX = 0, overlayY = 0, overlayWidth = 0, overlayHeight = 0;
+		if (overlay != null) {
+			if (overlay.getType() != BufferedImage.TYPE_INT_ARGB) {
+				throw new IllegalArgumentException("The overlay must be of TYPE_INT_ARGB");
+			}
+			overlayData = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+			overlayWidth = Math.min(overlay.getWidth(), size);
+			overlayHeight = Math.min(overlay.getHeight(), size);
+			overlayX = (size - overlayWidth) / 2;
+			overlayY = (size - overlayHeight) / 2;
+		}
+
+		BitArray row = new BitArray(n);
+		int previousModuleRow = -1;
+		for (int y = 0; y < size; y++) {
+			int offset = y * stride;
+			int moduleRow = moduleIndex[y];
+			if (moduleRow == previousModuleRow) {
+				System.arraycopy(data, offset - stride, data, offset, stride);
+			} else {
+				row = modules.getRow(moduleRow, row);
+				int x = 0;
+				while (x < size) {
+					if (row.get(moduleIndex[x])) {
+						int end = x + 1;
+						while (end < size && row.get(moduleIndex[end])) {
+							end++;
+						}
+						Arrays.fill(data, offset + x * 3, offset + end * 3, (byte) 0);
+						x = end;
+					} else {
+						x++;
+					}
+				}
+			}
+			previousModuleRow = moduleRow;
+
+			if (overlayData != null && y >= overlayY && y < overlayY + overlayHeight) {
+				// the next row must be rendered from the matrix again
+				previousModuleRow = -1;
+				int src = (y - overlayY) * overlay.getWidth();
+				int dest = offset + overlayX * 3;
+				for (int x = 0; x < overlayWidth; x++) {
+					int argb = overlayData[src + x];
+					int alpha = argb >>> 24;
+					int pos = dest + x * 3;
+					if (alpha == 0xFF) {
+						data[pos] = (byte) argb;
+						data[pos + 1] = (byte) (argb >> 8);
+						data[pos + 2] = (byte) (argb >> 16);
+					} else if (alpha != 0) {
+						data[pos] = blend(argb, data[pos], alpha);
+						data[pos + 1] = blend(argb >> 8, data[pos + 1], alpha);
+						data[pos + 2] = blend(argb >> 16, data[pos + 2], alpha);
+					}
+				}
+			}
+		}
+		record((long) size * size, System.nanoTime() - start);
+	}
+
+	private static byte blend(int source, byte target, int alpha) {
+		return (byte) (((source & 0xFF) * alpha + (target & 0xFF) * (0xFF - alpha)) / 0xFF);
+	}
+
+	/**
+	 * Sets the pixels from (inclusive) to (exclusive) of the packed row to black
+	 */
+	private static void clearBits(byte[] data, int offset, int from, int to) {
+		int first = from >> 3;
+		int last = (to - 1) >> 3;
+		int firstMask = 0xFF >>> (from & 7);
+		int lastMask = 0xFF << (7 - ((to - 1) & 7));
+		if (first == last) {
+			data[offset + first] &= ~(firstMask & lastMask);
+		} else {
+			data[offset + first] &= ~firstMask;
+			Arrays.fill(data, offset + first + 1, offset + last, (byte) 0);
+			data[offset + last] &= ~lastMask;
+		}
+	}
+
+	private static void record(long pixels, long nanos) {
+		renderedPixels.addAndGet(pixels);
+		renderNanos.addAndGet(nanos);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Rendered " + pixels + " pixels in " + nanos / 1000 + " us - total " + getPixelsPerSecond()
+					+ " pixels/s");
+		}
+	}
+
+	/**
+	 * Returns the number of pixels which were rendered since the start or the last
+	 * reset
+	 *
+	 * @return a long
+	 */
+	public static long getRenderedPixels() {
+		return renderedPixels.get();
+	}
+
+	/**
+	 * Returns the average rendering throughput in pixels per second
+	 *
+	 * @return a long
+	 */
+	public static long getPixelsPerSecond() {
+		long nanos = renderNanos.get();
+		return nanos == 0 ? 0 : (long) (renderedPixels.get() * 1000000000.0 / nanos);
+	}
+
+	/**
+	 * Resets the rendering statistics
+	 */
+	public static void resetStatistics() {
+		renderedPixels.set(0);
+		renderNanos.set(0);
+	}
+
+	/**
+	 * <p>Getter for the field <code>imageType</code>.</p>
+	 *
+	 * @return a int
+	 */
+	public int getImageType() {
+		return imageType;
+	}
+
+}
@@ -0,0 +1,172 @@
+package ch.swissqr.barcode;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import ch.swissqr.errors.BarcodeException;
+
+/**
+ * Per thread state which is reused by the barcode encoding: the raster images,
+ * the output buffer, the PNG encoder and the image writers. The encoding hints and the
+ * QRCodeWriter are immutable and shared by all threads.
+ *
+ * The images which are provided by the session are reused by the next call on
+ * the same thread, so they must not be handed out to the caller.
+ *
+ * @author pschatzmann
+ */
+public class EncoderSession {
+	private static final QRCodeWriter writer = new QRCodeWriter();
+	private static final Map<String, Map<EncodeHintType, Object>> hints = new ConcurrentHashMap();
+	private static final ThreadLocal<EncoderSession> sessions = new ThreadLocal<EncoderSession>() {
+		@Override
+		protected EncoderSession initialValue() {
+			return new EncoderSession();
+		}
+	};
+	private final Map<Integer, BufferedImage> images = new HashMap();
+	private final Map<String, ImageWriter> imageWriters = new HashMap();
+	private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(8 * 1024);
+	private final PngEncoder pngEncoder = new PngEncoder();
+
+	private EncoderSession() {
+	}
+
+	/**
+	 * Returns the session of the current thread
+	 *
+	 * @return a {@link ch.swissqr.barcode.EncoderSession} object
+	 */
+	public static EncoderSession get() {
+		return sessions.get();
+	}
+
+	/**
+	 * Returns the shared QRCodeWriter which is stateless
+	 *
+	 * @return a {@link com.google.zxing.qrcode.QRCodeWriter} object
+	 */
+	public static QRCodeWriter getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Returns the immutable encoding hints for the indicated error correction level
+	 * and margin
+	 *
+	 * @param level a {@link ch.swissqr.barcode.ErrorCorrectionLevel} object
+	 * @param margin the quiet zone in modules
+	 * @return a {@link java.util.Map} object
+	 */
+	public static Map<EncodeHintType, Object> getHints(ErrorCorrectionLevel level, int margin) {
+		String key = level.name() + margin;
+		Map<EncodeHintType, Object> result = hints.get(key);
+		if (result == null) {
+			Map<EncodeHintType, Object> map = new EnumMap(EncodeHintType.class);
+			map.put(EncodeHintType.ERROR_CORRECTION, com.google.zxing.qrcode.decoder.ErrorCorrectionLevel.forBits(level.getBits()));
+			map.put(EncodeHintType.MARGIN, margin);
+			map.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+			result = Collections.unmodifiableMap(map);
+			hints.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an image with the indicated dimensions and type. We keep one image
+	 * per type which is replaced when other dimensions are requested.
+	 *
+	 * @param width a int
+	 * @param height a int
+	 * @param imageType a int
+	 * @return a {@link java.awt.image.BufferedImage} object
+	 */
+	public BufferedImage getImage(int width, int height, int imageType) {
+		BufferedImage result = images.get(imageType);
+		if (result == null || result.getWidth() != width || result.getHeight() != height) {
+			result = new BufferedImage(width, height, imageType);
+			images.put(imageType, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the image in the indicated format to the output stream. PNG images
+	 * with only a few colors are written with the {@link PngEncoder}, all other
+	 * images with a reused image writer
+	 *
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 * @param imageFormat a {@link java.lang.String} object
+	 * @param os a {@link java.io.OutputStream} object
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public void write(BufferedImage image, String imageFormat, OutputStream os) throws BarcodeException, IOException {
+		if ("png".equalsIgnoreCase(imageFormat) && pngEncoder.write(image, os)) {
+			return;
+		}
+		ImageWriter imageWriter = getImageWriter(imageFormat);
+		ImageOutputStream ios = new MemoryCacheImageOutputStream(os);
+		try {
+			imageWriter.setOutput(ios);
+			imageWriter.write(image);
+		} finally {
+			imageWriter.setOutput(null);
+			ios.close();
+		}
+	}
+
+	/**
+	 * Returns the image in the indicated format
+	 *
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 * @param imageFormat a {@link java.lang.String} object
+	 * @return an array of {@link byte} objects
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public byte[] toBytes(BufferedImage image, String imageFormat) throws BarcodeException, IOException {
+		outputStream.reset();
+		write(image, imageFormat, outputStream);
+		return outputStream.toByteArray();
+	}
+
+	/**
+	 * Returns the PNG encoder of the session e.g. to change the deflate level
+	 *
+	 * @return a {@link ch.swissqr.barcode.PngEncoder} object
+	 */
+	public PngEncoder getPngEncoder() {
+		return pngEncoder;
+	}
+
+	private ImageWriter getImageWriter(String imageFormat) throws BarcodeException {
+		ImageWriter result = imageWriters.get(imageFormat);
+		if (result == null) {
+			Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(imageFormat);
+			if (!it.hasNext()) {
+				throw new BarcodeException("Unsupported image format: " + imageFormat);
+			}
+			result = it.next();
+			imageWriters.put(imageFormat, result);
+		}
+		return result;
+	}
+
+}
@@ -4,6 +4,8 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
 import ch.swissqr.errors.BarcodeException;
 
@@ -52,4 +54,28 @@ public interface IBarcode {
 	 * @throws ch.swissqr.errors.BarcodeException if any.
 	 */
 	public String readImage(BufferedImage bi) throws IOException, BarcodeException;
+	/**
+	 * Creates the barcode as SVG document
+	 *
+	 * @param qrCodeText a {@link java.lang.String} object
+	 * @return a {@link java.lang.String} object
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public String createSVG(String qrCodeText) throws BarcodeException, IOException;
+	/**
+	 * Draws the barcode as vector graphics into the PDF content stream. x and y define
+	 * the lower left corner and size the width and height in user units.
+	 *
+	 * @param document a {@link org.apache.pdfbox.pdmodel.PDDocument} object
+	 * @param contentStream a {@link org.apache.pdfbox.pdmodel.PDPageContentStream} object
+	 * @param qrCodeText a {@link java.lang.String} object
+	 * @param x a float
+	 * @param y a float
+	 * @param size a float
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public void drawPDF(PDDocument document, PDPageContentStream contentStream, String qrCodeText, float x, float y,
+			float size) throws BarcodeException, IOException;
 }
@@ -0,0 +1,164 @@
+package ch.swissqr.barcode;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.Convert;
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * Process wide cache for the decoded and scaled overlay images (e.g. the swiss
+ * cross) which are rendered in the center of a QR code. The key consists of the
+ * resource path, the dimension in mm and the resolution in DPI. The cache is
+ * bounded: the least recently used sizes are evicted first. The maximum number
+ * of entries can be defined with the system or environment property
+ * 'overlayCacheSize'.
+ *
+ * The returned images are shared and must not be modified.
+ *
+ * @author pschatzmann
+ */
+public class OverlayCache {
+	private static final Logger LOG = Logger.getLogger(OverlayCache.class);
+	private static int maxEntries = Integer.valueOf(StringUtils.getProperty("overlayCacheSize", "16"));
+	private static long hits = 0;
+	private static long misses = 0;
+	private static final Map<String, BufferedImage> cache = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+			boolean remove = size() > maxEntries;
+			if (remove) {
+				LOG.debug("Evicting overlay " + eldest.getKey());
+			}
+			return remove;
+		}
+	};
+
+	/**
+	 * Returns the overlay from the indicated resource scaled to a square of the
+	 * indicated size in mm
+	 *
+	 * @param resourceLocation a {@link java.lang.String} object
+	 * @param mm a double
+	 * @param dpi a double
+	 * @return a {@link java.awt.image.BufferedImage} object
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public static BufferedImage get(String resourceLocation, double mm, double dpi) throws BarcodeException, IOException {
+		String key = resourceLocation + "|" + mm + "|" + dpi;
+		synchronized (cache) {
+			BufferedImage result = cache.get(key);
+			if (result != null) {
+				hits++;
+				return result;
+			}
+			misses++;
+		}
+		// we load outside of the lock: in the worst case the same entry is loaded twice
+		BufferedImage result = load(resourceLocation, new Convert(dpi).mmToPixel(mm));
+		synchronized (cache) {
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	private static BufferedImage load(String resourceLocation, int size) throws BarcodeException, IOException {
+		InputStream is = OverlayCache.class.getResourceAsStream(resourceLocation);
+		if (is == null) {
+			throw new BarcodeException("The overlay resource could not be found: " + resourceLocation);
+		}
+		BufferedImage overlay;
+		try {
+			overlay = ImageIO.read(is);
+		} finally {
+			is.close();
+		}
+
+		BufferedImage imageBuff = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = imageBuff.createGraphics();
+		g.drawImage(overlay.getScaledInstance(size, size, Image.SCALE_SMOOTH), 0, 0, new Color(0, 0, 0), null);
+		g.dispose();
+		return imageBuff;
+	}
+
+	/**
+	 * Removes all cached overlays
+	 */
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of cached overlays
+	 *
+	 * @return a int
+	 */
+	public static int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * <p>Getter for the field <code>hits</code>.</p>
+	 *
+	 * @return a long
+	 */
+	public static long getHits() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+	/**
+	 * <p>Getter for the field <code>misses</code>.</p>
+	 *
+	 * @return a long
+	 */
+	public static long getMisses() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+
+	/**
+	 * <p>Getter for the field <code>maxEntries</code>.</p>
+	 *
+	 * @return a int
+	 */
+	public static int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Defines the maximum number of cached overlays
+	 *
+	 * @param max a int
+	 */
+	public static void setMaxEntries(int max) {
+		synchronized (cache) {
+			maxEntries = max;
+			while (cache.size() > maxEntries) {
+				String eldest = cache.keySet().iterator().next();
+				cache.remove(eldest);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,348 @@
+package ch.swissqr.barcode;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.log4j.Logger;
+
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * PNG encoder for barcode images with only a few colors. TYPE_BYTE_BINARY
+ * images are written with their packed rows as 1 bit palette PNG, gray images
+ * as 8 bit grayscale and all other images with at most 256 opaque colors as
+ * palette PNG with the smallest possible bit depth. A row which is identical to
+ * the previous row is written with the 'Up' filter as precomputed row of zeros.
+ *
+ * The deflate level can be defined with the system or environment property
+ * 'pngDeflateLevel' (0-9). The encoder is not thread safe: use one instance per
+ * thread (see {@link EncoderSession}).
+ *
+ * @author pschatzmann
+ */
+public class PngEncoder {
+	private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+	private static final int COLOR_TYPE_GRAY = 0;
+	private static final int COLOR_TYPE_PALETTE = 3;
+	private static final int FILTER_NONE = 0;
+	private static final int FILTER_UP = 2;
+	private static final Logger LOG = Logger.getLogger(PngEncoder.class);
+	private static final int DEFAULT_DEFLATE_LEVEL = 6;
+	private static int defaultDeflateLevel = getDeflateLevel(StringUtils.getProperty("pngDeflateLevel", String.valueOf(DEFAULT_DEFLATE_LEVEL)));
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final ByteArrayOutputStream idat = new ByteArrayOutputStream(8 * 1024);
+	private boolean reuseRows = true;
+	private byte[] indexes = new byte[0];
+	private byte[] zeros = new byte[0];
+
+	/**
+	 * Encoder with the default deflate level
+	 */
+	public PngEncoder() {
+		this(defaultDeflateLevel);
+	}
+
+	/**
+	 * <p>Constructor for PngEncoder.</p>
+	 *
+	 * @param deflateLevel 0 (no compression) to 9 (best compression)
+	 */
+	public PngEncoder(int deflateLevel) {
+		this.deflater = new Deflater(checkDeflateLevel(deflateLevel));
+	}
+
+	/**
+	 * Writes the image as PNG
+	 *
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 * @param os a {@link java.io.OutputStream} object
+	 * @return false if the image is not supported (e.g. more than 256 colors or transparency)
+	 * @throws java.io.IOException if any.
+	 */
+	public boolean write(BufferedImage image, OutputStream os) throws IOException {
+		switch (image.getType()) {
+		case BufferedImage.TYPE_BYTE_BINARY:
+			return writeBinary(image, os);
+		case BufferedImage.TYPE_BYTE_GRAY:
+			return writeGray(image, os);
+		default:
+			return writePalette(image, os);
+		}
+	}
+
+	private boolean writeBinary(BufferedImage image, OutputStream os) throws IOException {
+		MultiPixelPackedSampleModel sm = (MultiPixelPackedSampleModel) image.getSampleModel();
+		if (sm.getDataBitOffset() != 0 || image.getRaster().getSampleModelTranslateX() != 0
+				|| image.getRaster().getSampleModelTranslateY() != 0) {
+			return false;
+		}
+		int bits = sm.getPixelBitStride();
+		IndexColorModel cm = (IndexColorModel) image.getColorModel();
+		int[] palette = new int[cm.getMapSize()];
+		cm.getRGBs(palette);
+		DataBufferByte buffer = (DataBufferByte) image.getRaster().getDataBuffer();
+		writeImage(os, image.getWidth(), image.getHeight(), bits, COLOR_TYPE_PALETTE, palette, buffer.getData(),
+				buffer.getOffset(), sm.getScanlineStride());
+		return true;
+	}
+
+	private boolean writeGray(BufferedImage image, OutputStream os) throws IOException {
+		ComponentSampleModel sm = getComponentSampleModel(image);
+		if (sm == null || sm.getPixelStride() != 1) {
+			return false;
+		}
+		writeImage(os, image.getWidth(), image.getHeight(), 8, COLOR_TYPE_GRAY, null,
+				((DataBufferByte) image.getRaster().getDataBuffer()).getData(), getStart(image, sm, 0),
+				sm.getScanlineStride());
+		return true;
+	}
+
+	/**
+	 * Returns the sample model if the pixels can be read directly from the data
+	 * buffer, otherwise null
+	 */
+	private static ComponentSampleModel getComponentSampleModel(BufferedImage image) {
+		if (!(image.getSampleModel() instanceof ComponentSampleModel)
+				|| !(image.getRaster().getDataBuffer() instanceof DataBufferByte)) {
+			return null;
+		}
+		return (ComponentSampleModel) image.getSampleModel();
+	}
+
+	/**
+	 * Determines the position of the band of the first pixel in the data buffer.
+	 * A sub image shares the buffer of its parent, so the rows are scanline
+	 * stride apart and start at the translated position.
+	 */
+	private static int getStart(BufferedImage image, ComponentSampleModel sm, int band) {
+		return image.getRaster().getDataBuffer().getOffset() + sm.getOffset(-image.getRaster().getSampleModelTranslateX(),
+				-image.getRaster().getSampleModelTranslateY(), band);
+	}
+
+	private boolean writePalette(BufferedImage image, OutputStream os) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (indexes.length < width * height) {
+			indexes = new byte[width * height];
+		}
+		Map<Integer, Integer> colors = new HashMap();
+		int[] palette = new int[256];
+		int lastColor = 0;
+		int lastIndex = -1;
+		int[] row = new int[width];
+		ComponentSampleModel sm = image.getType() == BufferedImage.TYPE_3BYTE_BGR ? getComponentSampleModel(image)
+				: null;
+		byte[] data = null;
+		int start = 0, scanlineStride = 0, pixelStride = 0, green = 0, blue = 0;
+		if (sm != null) {
+			// positions of the bands relative to the red sample
+			data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			start = getStart(image, sm, 0);
+			green = getStart(image, sm, 1) - start;
+			blue = getStart(image, sm, 2) - start;
+			scanlineStride = sm.getScanlineStride();
+			pixelStride = sm.getPixelStride();
+		}
+		for (int y = 0; y < height; y++) {
+			if (data != null) {
+				int pos = start + y * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride) {
+					row[x] = 0xFF000000 | (data[pos] & 0xFF) << 16 | (data[pos + green] & 0xFF) << 8
+							| (data[pos + blue] & 0xFF);
+				}
+			} else {
+				image.getRGB(0, y, width, 1, row, 0, width);
+			}
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				int color = row[x];
+				if (color != lastColor || lastIndex < 0) {
+					if ((color >>> 24) != 0xFF) {
+						return false;
+					}
+					Integer index = colors.get(color);
+					if (index == null) {
+						if (colors.size() == palette.length) {
+							return false;
+						}
+						index = colors.size();
+						palette[index] = color;
+						colors.put(color, index);
+					}
+					lastColor = color;
+					lastIndex = index;
+				}
+				indexes[offset + x] = (byte) lastIndex;
+			}
+		}
+
+		int size = colors.size();
+		int bits = size <= 2 ? 1 : size <= 4 ? 2 : size <= 16 ? 4 : 8;
+		int stride = width;
+		byte[] rows = indexes;
+		if (bits < 8) {
+			// pack the indexes in place: the packed rows are never longer than the unpacked rows
+			stride = (width * bits + 7) / 8;
+			int perByte = 8 / bits;
+			for (int y = 0; y < height; y++) {
+				int src = y * width;
+				int dest = y * stride;
+				for (int b = 0; b < stride; b++) {
+					int value = 0;
+					for (int j = 0; j < perByte; j++) {
+						int x = b * perByte + j;
+						int index = x < width ? indexes[src + x] : 0;
+						value = (value << bits) | index;
+					}
+					rows[dest + b] = (byte) value;
+				}
+			}
+		}
+		writeImage(os, width, height, bits, COLOR_TYPE_PALETTE, Arrays.copyOf(palette, size), rows, 0, stride);
+		return true;
+	}
+
+	private void writeImage(OutputStream os, int width, int height, int bits, int colorType, int[] palette,
+			byte[] data, int start, int stride) throws IOException {
+		os.write(SIGNATURE);
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		writeInt(header, width);
+		writeInt(header, height);
+		header.write(bits);
+		header.write(colorType);
+		header.write(0); // compression
+		header.write(0); // filter
+		header.write(0); // interlace
+		writeChunk(os, "IHDR", header.toByteArray(), header.size());
+
+		if (palette != null) {
+			byte[] plte = new byte[palette.length * 3];
+			for (int j = 0; j < palette.length; j++) {
+				plte[j * 3] = (byte) (palette[j] >> 16);
+				plte[j * 3 + 1] = (byte) (palette[j] >> 8);
+				plte[j * 3 + 2] = (byte) palette[j];
+			}
+			writeChunk(os, "PLTE", plte, plte.length);
+		}
+
+		int rowBytes = (width * bits + 7) / 8;
+		if (zeros.length < rowBytes) {
+			zeros = new byte[rowBytes];
+		}
+		idat.reset();
+		deflater.reset();
+		DeflaterOutputStream dos = new DeflaterOutputStream(idat, deflater, 8 * 1024);
+		for (int y = 0; y < height; y++) {
+			int offset = start + y * stride;
+			if (reuseRows && y > 0 && isSameRow(data, offset - stride, offset, rowBytes)) {
+				dos.write(FILTER_UP);
+				dos.write(zeros, 0, rowBytes);
+			} else {
+				dos.write(FILTER_NONE);
+				dos.write(data, offset, rowBytes);
+			}
+		}
+		dos.finish();
+		writeChunk(os, "IDAT", idat.toByteArray(), idat.size());
+		writeChunk(os, "IEND", new byte[0], 0);
+	}
+
+	private static boolean isSameRow(byte[] data, int previous, int current, int len) {
+		for (int j = 0; j < len; j++) {
+			if (data[previous + j] != data[current + j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writeChunk(OutputStream os, String type, byte[] data, int len) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		writeInt(os, len);
+		os.write(typeBytes);
+		os.write(data, 0, len);
+		crc.reset();
+		crc.update(typeBytes);
+		crc.update(data, 0, len);
+		writeInt(os, (int) crc.getValue());
+	}
+
+	private static void writeInt(OutputStream os, int value) throws IOException {
+		os.write(value >>> 24);
+		os.write(value >>> 16);
+		os.write(value >>> 8);
+		os.write(value);
+	}
+
+	/**
+	 * Returns true if rows which are identical to the previous row are written as
+	 * precomputed 'Up' filter rows
+	 *
+	 * @return a boolean
+	 */
+	public boolean isReuseRows() {
+		return reuseRows;
+	}
+
+	/**
+	 * <p>Setter for the field <code>reuseRows</code>.</p>
+	 *
+	 * @param reuseRows a boolean
+	 */
+	public void setReuseRows(boolean reuseRows) {
+		this.reuseRows = reuseRows;
+	}
+
+	/**
+	 * Defines the deflate level (0-9)
+	 *
+	 * @param level a int
+	 */
+	public void setDeflateLevel(int level) {
+		deflater.setLevel(checkDeflateLevel(level));
+	}
+
+	/**
+	 * Defines the deflate level for new encoders
+	 *
+	 * @param level a int
+	 */
+	public static void setDefaultDeflateLevel(int level) {
+		defaultDeflateLevel = checkDeflateLevel(level);
+	}
+
+	private static int checkDeflateLevel(int level) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("The deflate level must be between 0 and 9: " + level);
+		}
+		return level;
+	}
+
+	/**
+	 * Converts the value of the pngDeflateLevel property. Invalid values are
+	 * replaced by the default level.
+	 */
+	private static int getDeflateLevel(String value) {
+		try {
+			return checkDeflateLevel(Integer.valueOf(value.trim()));
+		} catch (IllegalArgumentException ex) {
+			LOG.warn("Invalid pngDeflateLevel '" + value + "': using " + DEFAULT_DEFLATE_LEVEL);
+			return DEFAULT_DEFLATE_LEVEL;
+		}
+	}
+
+}
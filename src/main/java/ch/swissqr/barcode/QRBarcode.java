@@ -1,28 +1,18 @@
 package ch.swissqr.barcode;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Hashtable;
+import java.io.OutputStream;
 
 import javax.imageio.ImageIO;
 
-import org.apache.log4j.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.Result;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
-import com.google.zxing.qrcode.QRCodeWriter;
 
 import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.utils.Convert;
@@ -33,10 +23,11 @@ import ch.swissqr.utils.Convert;
  * @author pschatzmann
  */
 public class QRBarcode implements IBarcode {
-	private static final Logger LOG = Logger.getLogger(QRBarcode.class);
 	private ErrorCorrectionLevel level = ErrorCorrectionLevel.M;
 	private Convert cv = new Convert(120.0);
-	private int dimensions = cv.mmToPixel(46.0) ; // in pixel e.g. 174
+	private double dimensionsMM = 46.0;
+	private int dimensions = cv.mmToPixel(dimensionsMM) ; // in pixel e.g. 174
+	private BitMatrixRenderer renderer = new BitMatrixRenderer();
 
 	/**
 	 * <p>Constructor for QRBarcode.</p>
@@ -51,6 +42,7 @@ public class QRBarcode implements IBarcode {
 	 * @param level a {@link ch.swissqr.barcode.ErrorCorrectionLevel} object
 	 */
 	public QRBarcode(double dimensionsMM, ErrorCorrectionLevel level) {
+		this.dimensionsMM = dimensionsMM;
 		this.dimensions = cv.mmToPixel(dimensionsMM);
 		this.level = level;
 	}
@@ -61,60 +53,141 @@ public class QRBarcode implements IBarcode {
 	 * Create the image for the indicated barcode String
 	 */
 	public BufferedImage createImage(String qrCodeText, String imageFormat) throws BarcodeException, IOException {
-		byte[] barcode = create(qrCodeText, imageFormat);
-		ByteArrayInputStream input = new ByteArrayInputStream(barcode);
-		BufferedImage image = ImageIO.read(input);
-		return image;
+		return render(qrCodeText, null);
 	}
 
-	
-	
 	/**
 	 * {@inheritDoc}
 	 *
-	 * Create the image for the indicated barcode String
+	 * Create the image for the indicated barcode String. The raster image and the
+	 * output buffer are reused from the {@link EncoderSession} of the current thread.
 	 */
 	public byte[] create(String qrCodeText, String imageFormat) throws BarcodeException, IOException {
+		EncoderSession session = EncoderSession.get();
+		return session.toBytes(render(qrCodeText, session), imageFormat);
+	}
+
+	/**
+	 * Writes the image for the indicated barcode String to the output stream. Except
+	 * for the encoding of the QR code no new objects are needed for repeated calls
+	 * with the same dimensions on the same thread.
+	 *
+	 * @param qrCodeText a {@link java.lang.String} object
+	 * @param imageFormat a {@link java.lang.String} object
+	 * @param os a {@link java.io.OutputStream} object
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public void write(String qrCodeText, String imageFormat, OutputStream os) throws BarcodeException, IOException {
+		EncoderSession session = EncoderSession.get();
+		session.write(render(qrCodeText, session), imageFormat, os);
+	}
+
+	/**
+	 * Renders the barcode. If a session is provided the image is taken from the
+	 * session otherwise a new image is created.
+	 *
+	 * @param qrCodeText a {@link java.lang.String} object
+	 * @param session a {@link ch.swissqr.barcode.EncoderSession} object or null
+	 * @return a {@link java.awt.image.BufferedImage} object
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	protected BufferedImage render(String qrCodeText, EncoderSession session) throws BarcodeException, IOException {
+		BitMatrix byteMatrix;
 		try {
-			Hashtable hints = new Hashtable();
-			com.google.zxing.qrcode.decoder.ErrorCorrectionLevel.valueOf(level.toString());
-			hints.put(EncodeHintType.ERROR_CORRECTION, com.google.zxing.qrcode.decoder.ErrorCorrectionLevel.valueOf(level.toString()));
-		    hints.put(EncodeHintType.MARGIN, 1);
-		    hints.put(EncodeHintType.CHARACTER_SET,"UTF-8");
-		    
-	
-			QRCodeWriter qrCodeWriter = new QRCodeWriter();
-			int size = getDimensions();
-	
-			BitMatrix byteMatrix = qrCodeWriter.encode(qrCodeText, BarcodeFormat.QR_CODE, size, size, hints);
-			int matrixWidth = byteMatrix.getWidth();
-			BufferedImage image = new BufferedImage(matrixWidth, matrixWidth,BufferedImage.TYPE_INT_RGB);
-			image.createGraphics();
-	
-			Graphics2D graphics = (Graphics2D) image.getGraphics();
-			graphics.setColor(Color.WHITE);
-			graphics.fillRect(0, 0, matrixWidth, matrixWidth);
-			// Paint and save the image using the ByteMatrix
-			graphics.setColor(Color.BLACK);
-	
-			for (int i = 0; i < matrixWidth; i++) {
-				for (int j = 0; j < matrixWidth; j++) {
-					if (byteMatrix.get(i, j)) {
-						graphics.fillRect(i, j, 1, 1);
-					}
-				}
-			}
-			
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			ImageIO.write( image, imageFormat, baos );
-			baos.flush();
-			byte[] imageInByte = baos.toByteArray();
-			baos.close();
-			return imageInByte;
-		} catch(Exception ex) {
+			byteMatrix = encode(qrCodeText, getDimensions(), 1);
+		} catch (Exception ex) {
+			throw new BarcodeException(ex);
+		}
+		if (session == null) {
+			return renderer.render(byteMatrix);
+		}
+		BufferedImage image = session.getImage(byteMatrix.getWidth(), byteMatrix.getHeight(), renderer.getImageType());
+		renderer.render(byteMatrix, image);
+		return image;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Creates the barcode as SVG document where the modules are merged into one path
+	 */
+	public String createSVG(String qrCodeText) throws BarcodeException, IOException {
+		BitMatrix modules = encodeModules(qrCodeText);
+		return QRVectorRenderer.toSVG(modules, dimensionsMM, getOverlaySVG(modules.getWidth()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Draws the barcode as vector graphics into the PDF content stream
+	 */
+	public void drawPDF(PDDocument document, PDPageContentStream contentStream, String qrCodeText, float x, float y,
+			float size) throws BarcodeException, IOException {
+		BitMatrix modules = encodeModules(qrCodeText);
+		QRVectorRenderer.drawPDF(contentStream, modules, x, y, size);
+		drawOverlayPDF(document, contentStream, x, y, size);
+	}
+
+	/**
+	 * Returns the SVG elements which are drawn on top of the modules. The coordinates
+	 * are measured in modules.
+	 *
+	 * @param modules the number of modules including the quiet zone
+	 * @return a {@link java.lang.String} object or null
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	protected String getOverlaySVG(int modules) throws BarcodeException, IOException {
+		return null;
+	}
+
+	/**
+	 * Draws the content on top of the modules into the PDF content stream
+	 *
+	 * @param document a {@link org.apache.pdfbox.pdmodel.PDDocument} object
+	 * @param contentStream a {@link org.apache.pdfbox.pdmodel.PDPageContentStream} object
+	 * @param x a float
+	 * @param y a float
+	 * @param size a float
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	protected void drawOverlayPDF(PDDocument document, PDPageContentStream contentStream, float x, float y, float size)
+			throws BarcodeException, IOException {
+	}
+
+	/**
+	 * Returns the quiet zone in modules which is used for the vector output
+	 *
+	 * @return a int
+	 */
+	protected int getMargin() {
+		return 1;
+	}
+
+	private BitMatrix encodeModules(String qrCodeText) throws BarcodeException {
+		try {
+			return encode(qrCodeText, 0, getMargin());
+		} catch (Exception ex) {
 			throw new BarcodeException(ex);
 		}
 	}
+
+	/**
+	 * Encodes the text into a BitMatrix with the indicated size in pixels. If the size is 0
+	 * we get exactly one pixel per module.
+	 *
+	 * @param qrCodeText a {@link java.lang.String} object
+	 * @param size a int
+	 * @param margin the quiet zone in modules
+	 * @return a {@link com.google.zxing.common.BitMatrix} object
+	 * @throws com.google.zxing.WriterException if any.
+	 */
+	protected BitMatrix encode(String qrCodeText, int size, int margin) throws WriterException {
+		return EncoderSession.getWriter().encode(qrCodeText, BarcodeFormat.QR_CODE, size, size, EncoderSession.getHints(level, margin));
+	}
 	
 	/**
 	 * Reads the image from the Inputstream and returns the related decoded content string
@@ -138,30 +211,13 @@ public class QRBarcode implements IBarcode {
 	/**
 	 * {@inheritDoc}
 	 *
-	 * Reads the BufferedImage from  and returns the related decoded content string
+	 * Reads the BufferedImage and returns the related decoded content string. The
+	 * decoding is escalated by the {@link QRDecoder} from a cheap pass to
+	 * the expensive ones.
 	 */
 	public String readImage(BufferedImage bi)
 			throws IOException, BarcodeException {
-		try {
-	
-			LOG.info("Dimension: "+bi.getHeight()+"/"+bi.getWidth());
-			Hashtable<DecodeHintType, Object> hintMap = new Hashtable<DecodeHintType, Object>();
-			hintMap.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
-	
-			// Bild zu BinaryBitmap verwandeln
-			BufferedImageLuminanceSource source = new BufferedImageLuminanceSource(bi);
-			BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-	
-			// QR Leser initialisieren...
-			QRCodeReader reader = new QRCodeReader();
-			// ...und lesen:
-			Result result;
-				result = reader.decode(bitmap, hintMap);
-				
-			return result.getText();
-		} catch(Exception ex) {
-			throw new BarcodeException(ex);
-		}
+		return QRDecoder.decode(bi);
 	}
 	
 	/**
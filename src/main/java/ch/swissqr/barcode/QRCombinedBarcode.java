@@ -1,16 +1,16 @@
 package ch.swissqr.barcode;
 
-import java.awt.AlphaComposite;
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
 
-import javax.imageio.ImageIO;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
+import com.google.zxing.common.BitMatrix;
 
 import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.utils.Convert;
@@ -18,13 +18,23 @@ import ch.swissqr.utils.Convert;
 /**
  * Generation of a  QR Barcode with an image in the center. The image is loaded from the resources
  *
+ * The barcode is encoded with one pixel per module and a quiet zone of 1 module
+ * like the ZXing output. The modules are then scaled to the requested dimension and
+ * the overlay is composited in the same pass. The modules are sampled without
+ * smoothing, so their widths differ by at most one pixel: gray edges make the
+ * small modules of long payloads unreadable. In the vector output the swiss cross
+ * is drawn as vector graphics and any other overlay is embedded as image.
+ *
  * @author pschatzmann
  */
 public class QRCombinedBarcode extends QRBarcode implements IBarcode {
+	/** Resource of the swiss cross */
+	public static final String SWISS_CROSS = "/kreuz/CH-Kreuz_7mm.png";
+	private static final double OVERLAY_RATIO = 6.5714; // 46mm / 7mm
 	private Convert cv = new Convert(120.0);
 	private String resourceLocation="";
 	private double dimension;
-	private ErrorCorrectionLevel errorLevel;
+	private BitMatrixRenderer renderer = new BitMatrixRenderer();
 	
 	/**
 	 * <p>Constructor for QRCombinedBarcode.</p>
@@ -34,58 +44,74 @@ public class QRCombinedBarcode extends QRBarcode implements IBarcode {
 	 * @param level a {@link ch.swissqr.barcode.ErrorCorrectionLevel} object
 	 */
 	public QRCombinedBarcode(String resourceLocation, double dimensionsMM, ErrorCorrectionLevel level) {		
+		super(dimensionsMM, level);
 		this.resourceLocation = resourceLocation;
 		this.dimension = dimensionsMM;
-		this.errorLevel = level;
 	}
 	
 	/** {@inheritDoc} */
 	@Override
-	public byte[] create(String qrCodeText, String imageFormat) throws BarcodeException, IOException  {
-		BufferedImage bi = createImage(qrCodeText, imageFormat);
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ImageIO.write(bi, imageFormat, baos);
-		baos.flush();
-		byte[] imageInByte = baos.toByteArray();
-		baos.close();
-		return imageInByte;
+	protected BufferedImage render(String qrCodeText, EncoderSession session) throws BarcodeException, IOException {
+		BitMatrix modules;
+		try {
+			modules = encode(qrCodeText, 0, getMargin());
+		} catch (Exception ex) {
+			throw new BarcodeException(ex);
+		}
+		BufferedImage overlay = OverlayCache.get(resourceLocation, dimension / OVERLAY_RATIO, cv.getDpi());
+		int size = cv.mmToPixel(dimension);
+		if (session == null) {
+			return renderer.renderWithOverlay(modules, size, overlay);
+		}
+		BufferedImage image = session.getImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+		renderer.renderWithOverlay(modules, overlay, image);
+		return image;
 	}
 
 	/** {@inheritDoc} */
 	@Override
-	public BufferedImage createImage(String qrCodeText, String imageFormat) throws BarcodeException, IOException  {
-		IBarcode bc = new QRBarcode(cv.mmToPixel(dimension), this.errorLevel);
-		BufferedImage barcode = bc.createImage(qrCodeText, imageFormat);
-		BufferedImage overlay = ImageIO.read(this.getClass().getResourceAsStream(resourceLocation));
-
-		return getQRCodeWithOverlay(barcode, overlay);
+	protected String getOverlaySVG(int modules) throws BarcodeException, IOException {
+		double size = modules / OVERLAY_RATIO;
+		double pos = (modules - size) / 2;
+		if (isSwissCross()) {
+			return QRVectorRenderer.getSwissCrossSVG(pos, pos, size);
+		}
+		String value = QRVectorRenderer.format(pos);
+		String sizeValue = QRVectorRenderer.format(size);
+		return "<image x=\"" + value + "\" y=\"" + value + "\" width=\"" + sizeValue + "\" height=\"" + sizeValue
+				+ "\" preserveAspectRatio=\"none\" xlink:href=\"data:image/png;base64,"
+				+ Base64.getEncoder().encodeToString(getOverlayBytes())
+				+ "\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"/>\n";
 	}
 
-	private BufferedImage getQRCodeWithOverlay(BufferedImage barcodeRow, BufferedImage overlay) {
-		BufferedImage barcode = scale(barcodeRow, dimension);
-		BufferedImage scaledOverlay = scale(overlay, dimension / 6.5714); // 7
-
-		Integer deltaHeight = barcode.getHeight() - scaledOverlay.getHeight();
-		Integer deltaWidth = barcode.getWidth() - scaledOverlay.getWidth();
-
-		BufferedImage combined = new BufferedImage(barcode.getWidth(), barcode.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-		Graphics2D g2 = (Graphics2D) combined.getGraphics();
-		g2.drawImage(barcode, 0, 0, null);
-		g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
-		g2.drawImage(scaledOverlay, Math.round(deltaWidth / 2), Math.round(deltaHeight / 2), null);
-		return combined;
+	/** {@inheritDoc} */
+	@Override
+	protected void drawOverlayPDF(PDDocument document, PDPageContentStream contentStream, float x, float y, float size)
+			throws BarcodeException, IOException {
+		float overlaySize = (float) (size / OVERLAY_RATIO);
+		float offset = (size - overlaySize) / 2;
+		if (isSwissCross()) {
+			QRVectorRenderer.drawSwissCrossPDF(contentStream, x + offset, y + offset, overlaySize);
+		} else {
+			PDImageXObject image = PDImageXObject.createFromByteArray(document, getOverlayBytes(), resourceLocation);
+			contentStream.drawImage(image, x + offset, y + offset, overlaySize, overlaySize);
+		}
 	}
 
-	private BufferedImage scale(BufferedImage input, double mm) {
-		Integer scaledWidth = cv.mmToPixel(mm);
-		Integer scaledHeight = scaledWidth;
+	private boolean isSwissCross() {
+		return SWISS_CROSS.equals(resourceLocation);
+	}
 
-		BufferedImage imageBuff = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
-		Graphics g = imageBuff.createGraphics();
-		g.drawImage(input.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH), 0, 0,
-				new Color(0, 0, 0), null);
-		g.dispose();
-		return imageBuff;
+	private byte[] getOverlayBytes() throws BarcodeException, IOException {
+		InputStream is = QRCombinedBarcode.class.getResourceAsStream(resourceLocation);
+		if (is == null) {
+			throw new BarcodeException("The overlay resource could not be found: " + resourceLocation);
+		}
+		try {
+			return IOUtils.toByteArray(is);
+		} finally {
+			is.close();
+		}
 	}
 
 }
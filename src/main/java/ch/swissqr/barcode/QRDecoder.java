@@ -0,0 +1,316 @@
+package ch.swissqr.barcode;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.Metrics;
+
+/**
+ * Decodes QR codes from images with stages of increasing costs: clean images
+ * are decoded by the first cheap stage and only difficult images go through
+ * the expensive stages.
+ *
+ * <ol>
+ * <li>REGION: only the area of the QR code if the image is a scan of a page
+ * with a QR-bill</li>
+ * <li>FAST: global histogram binarizer on a downscaled gray image</li>
+ * <li>HYBRID: local (hybrid) binarizer on the full resolution</li>
+ * <li>TRY_HARDER: hybrid binarizer with the TRY_HARDER hint</li>
+ * <li>ROTATED: the image rotated by 45 degrees</li>
+ * <li>CROPPED: the 4 overlapping quarters of the image</li>
+ * </ol>
+ *
+ * <p>
+ * Each stage records its attempts and its hits in the {@link Metrics}
+ * 'qrDecode.STAGE' and 'qrDecode.STAGE.hit', so that the hit rate of the
+ * stages can be monitored.
+ * </p>
+ *
+ * <p>
+ * The payment part of a QR-bill is always at the bottom of the page and the
+ * QR code has a fixed position in it. So for images with the proportions of
+ * an A4 page, an A5 page or a payment part, the resolution of the scan is
+ * derived from the width (210 mm) and only the area of the QR code is
+ * converted and decoded first.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class QRDecoder {
+	private static final Logger LOG = Logger.getLogger(QRDecoder.class);
+	// the fast stage scales the images down to this size
+	private static final int FAST_SIZE = 1000;
+	// QR-bill layout in mm: the area of the QR code incl. a tolerance of 10 mm
+	private static final float PAGE_WIDTH = 210;
+	private static final float SLIP_HEIGHT = 105;
+	private static final float REGION_LEFT = 53;
+	private static final float REGION_RIGHT = 124;
+	private static final float REGION_TOP = 5;
+	private static final float REGION_BOTTOM = 76;
+	private static final int MIN_PAGE_WIDTH = 600;
+	private static final Map<DecodeHintType, Object> NO_HINTS = Collections.emptyMap();
+	private static final Map<DecodeHintType, Object> TRY_HARDER = new EnumMap(DecodeHintType.class);
+
+	static {
+		TRY_HARDER.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+	}
+
+	/**
+	 * The decoding stages in the sequence in which they are tried
+	 */
+	public enum Stage {
+		REGION, FAST, HYBRID, TRY_HARDER, ROTATED, CROPPED;
+
+		/**
+		 * @return the attempts of the stage
+		 */
+		public Metrics getMetrics() {
+			return Metrics.get("qrDecode." + name());
+		}
+
+		/**
+		 * @return the successful attempts of the stage
+		 */
+		public Metrics getHitMetrics() {
+			return Metrics.get("qrDecode." + name() + ".hit");
+		}
+	}
+
+	/**
+	 * Decodes the QR code in the image
+	 *
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 * @return the content of the QR code
+	 * @throws ch.swissqr.errors.BarcodeException if no QR code can be found
+	 */
+	public static String decode(BufferedImage image) throws BarcodeException {
+		LOG.debug("Dimension: " + image.getHeight() + "/" + image.getWidth());
+		QRCodeReader reader = new QRCodeReader();
+		Rectangle region = getRegion(image.getWidth(), image.getHeight());
+		LuminanceSource source = null;
+		Exception error = null;
+		for (Stage stage : Stage.values()) {
+			if (stage == Stage.REGION && region == null) {
+				continue;
+			}
+			if (stage != Stage.REGION && source == null) {
+				// the gray conversion is done only once for the remaining stages
+				source = toLuminance(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+			}
+			long start = System.nanoTime();
+			try {
+				Result result = stage == Stage.REGION ? decodeRegion(reader, toLuminance(image, region))
+						: decode(reader, stage, image, source);
+				stage.getHitMetrics().recordSince(start);
+				return result.getText();
+			} catch (ReaderException ex) {
+				error = ex;
+			} catch (RuntimeException ex) {
+				// ZXing rejects some degenerated images with unchecked exceptions
+				LOG.debug("Stage " + stage + " failed: " + ex);
+				error = ex;
+			} finally {
+				stage.getMetrics().recordSince(start);
+			}
+		}
+		throw new BarcodeException(error);
+	}
+
+	/**
+	 * Returns the area of the QR code in the payment part if the image has the
+	 * proportions of an A4 page (portrait), an A5 page (landscape) or a payment
+	 * part. Otherwise null is returned.
+	 *
+	 * @param width width of the image in pixels
+	 * @param height height of the image in pixels
+	 * @return a {@link java.awt.Rectangle} object or null
+	 */
+	public static Rectangle getRegion(int width, int height) {
+		float ratio = (float) height / width;
+		boolean a4 = ratio > 1.3f && ratio < 1.5f;
+		boolean a5 = ratio > 0.65f && ratio < 0.75f;
+		boolean slip = ratio > 0.45f && ratio < 0.55f;
+		if (width < MIN_PAGE_WIDTH || !(a4 || a5 || slip)) {
+			return null;
+		}
+		float pixelsPerMM = width / PAGE_WIDTH;
+		float slipTop = Math.max(0, height - SLIP_HEIGHT * pixelsPerMM);
+		int left = Math.round(REGION_LEFT * pixelsPerMM);
+		int top = Math.round(slipTop + REGION_TOP * pixelsPerMM);
+		int right = Math.min(width, Math.round(REGION_RIGHT * pixelsPerMM));
+		int bottom = Math.min(height, Math.round(slipTop + REGION_BOTTOM * pixelsPerMM));
+		return new Rectangle(left, top, right - left, bottom - top);
+	}
+
+	/**
+	 * The region contains mainly the QR code, so the cheap binarizer is tried
+	 * first
+	 */
+	private static Result decodeRegion(QRCodeReader reader, LuminanceSource source) throws ReaderException {
+		try {
+			return decode(reader, new GlobalHistogramBinarizer(source), NO_HINTS);
+		} catch (ReaderException ex) {
+			return decode(reader, new HybridBinarizer(source), NO_HINTS);
+		}
+	}
+
+	private static Result decode(QRCodeReader reader, Stage stage, BufferedImage image, LuminanceSource source)
+			throws ReaderException {
+		switch (stage) {
+		case FAST:
+			return decode(reader, new GlobalHistogramBinarizer(downscale(source, FAST_SIZE)), NO_HINTS);
+		case HYBRID:
+			return decode(reader, new HybridBinarizer(source), NO_HINTS);
+		case TRY_HARDER:
+			return decode(reader, new HybridBinarizer(source), TRY_HARDER);
+		case ROTATED:
+			LuminanceSource rotated = new BufferedImageLuminanceSource(image).rotateCounterClockwise45();
+			return decode(reader, new HybridBinarizer(rotated), TRY_HARDER);
+		default:
+			// QR codes which are disturbed by the surrounding content
+			int width = source.getWidth() * 2 / 3;
+			int height = source.getHeight() * 2 / 3;
+			if (width == 0 || height == 0) {
+				throw NotFoundException.getNotFoundInstance();
+			}
+			ReaderException error = null;
+			for (int quarter = 0; quarter < 4; quarter++) {
+				int left = quarter % 2 == 0 ? 0 : source.getWidth() - width;
+				int top = quarter / 2 == 0 ? 0 : source.getHeight() - height;
+				try {
+					return decode(reader, new HybridBinarizer(source.crop(left, top, width, height)), TRY_HARDER);
+				} catch (ReaderException ex) {
+					error = ex;
+				}
+			}
+			throw error;
+		}
+	}
+
+	private static Result decode(QRCodeReader reader, Binarizer binarizer, Map<DecodeHintType, Object> hints)
+			throws ReaderException {
+		try {
+			return reader.decode(new BinaryBitmap(binarizer), hints);
+		} finally {
+			reader.reset();
+		}
+	}
+
+	/**
+	 * Determines the luminance of the pixels in the area of the image. The
+	 * common image types are converted directly from their data buffer.
+	 */
+	private static LuminanceSource toLuminance(BufferedImage image, Rectangle area) {
+		int width = area.width;
+		int height = area.height;
+		Raster raster = image.getRaster();
+		SampleModel model = raster.getSampleModel();
+		boolean direct = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+		int type = image.getType();
+		byte[] result = new byte[width * height];
+		if (direct && (type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_3BYTE_BGR)
+				&& model instanceof ComponentSampleModel) {
+			byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+			ComponentSampleModel components = (ComponentSampleModel) model;
+			int stride = components.getScanlineStride();
+			int pixelStride = components.getPixelStride();
+			int[] bands = components.getBandOffsets();
+			for (int y = 0; y < height; y++) {
+				int offset = (area.y + y) * stride + area.x * pixelStride;
+				if (type == BufferedImage.TYPE_BYTE_GRAY) {
+					System.arraycopy(data, offset, result, y * width, width);
+				} else {
+					for (int x = 0; x < width; x++, offset += pixelStride) {
+						result[y * width + x] = (byte) luminance(data[offset + bands[0]] & 0xff,
+								data[offset + bands[1]] & 0xff, data[offset + bands[2]] & 0xff);
+					}
+				}
+			}
+		} else if (direct && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& model instanceof SinglePixelPackedSampleModel) {
+			int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+			int stride = ((SinglePixelPackedSampleModel) model).getScanlineStride();
+			boolean alpha = type == BufferedImage.TYPE_INT_ARGB;
+			for (int y = 0; y < height; y++) {
+				int offset = (area.y + y) * stride + area.x;
+				for (int x = 0; x < width; x++) {
+					int pixel = data[offset + x];
+					if (alpha && (pixel >>> 24) == 0) {
+						// transparent pixels are white
+						result[y * width + x] = (byte) 0xff;
+					} else {
+						result[y * width + x] = (byte) luminance((pixel >> 16) & 0xff, (pixel >> 8) & 0xff, pixel & 0xff);
+					}
+				}
+			}
+		} else {
+			result = new BufferedImageLuminanceSource(image, area.x, area.y, width, height).getMatrix();
+		}
+		return new PlanarYUVLuminanceSource(result, width, height, 0, 0, width, height, false);
+	}
+
+	/**
+	 * Same weights as the BufferedImageLuminanceSource
+	 */
+	private static int luminance(int red, int green, int blue) {
+		return (306 * red + 601 * green + 117 * blue + 0x200) >> 10;
+	}
+
+	/**
+	 * Scales the image down by an integer factor so that the longer side is not
+	 * larger than the indicated size. The pixels are averaged.
+	 */
+	private static LuminanceSource downscale(LuminanceSource source, int size) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int factor = (Math.max(width, height) + size - 1) / size;
+		if (factor <= 1) {
+			return source;
+		}
+		byte[] matrix = source.getMatrix();
+		int scaledWidth = width / factor;
+		int scaledHeight = height / factor;
+		byte[] scaled = new byte[scaledWidth * scaledHeight];
+		int pixels = factor * factor;
+		int[] sums = new int[scaledWidth];
+		for (int y = 0; y < scaledHeight; y++) {
+			for (int dy = 0; dy < factor; dy++) {
+				int offset = (y * factor + dy) * width;
+				for (int x = 0; x < scaledWidth * factor; x++) {
+					sums[x / factor] += matrix[offset + x] & 0xff;
+				}
+			}
+			for (int x = 0; x < scaledWidth; x++) {
+				scaled[y * scaledWidth + x] = (byte) (sums[x] / pixels);
+				sums[x] = 0;
+			}
+		}
+		return new PlanarYUVLuminanceSource(scaled, scaledWidth, scaledHeight, 0, 0, scaledWidth, scaledHeight, false);
+	}
+
+}
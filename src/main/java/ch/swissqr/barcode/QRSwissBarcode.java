@@ -27,7 +27,7 @@ public class QRSwissBarcode extends QRCombinedBarcode implements IBarcode {
 	 * @param isTest a boolean
 	 */
 	public QRSwissBarcode(boolean isTest) {
-		super(isTest? "/icons/test.png" : "/kreuz/CH-Kreuz_7mm.png", 46.0, ErrorCorrectionLevel.M);
+		super(isTest? "/icons/test.png" : SWISS_CROSS, 46.0, ErrorCorrectionLevel.M);
 	}
 	
 	/**
@@ -38,7 +38,7 @@ public class QRSwissBarcode extends QRCombinedBarcode implements IBarcode {
 	 * @param level a {@link ch.swissqr.barcode.ErrorCorrectionLevel} object
 	 */
 	public QRSwissBarcode(boolean isTest, Double size, ErrorCorrectionLevel level) {
-		super(isTest? "/icons/test.png" : "/kreuz/CH-Kreuz_7mm.png",size, level);
+		super(isTest? "/icons/test.png" : SWISS_CROSS,size, level);
 	}
 	
 	
@@ -0,0 +1,197 @@
+package ch.swissqr.barcode;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * Vector output of QR codes: the dark modules are merged into rectangles (horizontal
+ * runs which are extended over the following rows) and written as one SVG path or as
+ * one filled path into a PDF content stream. The swiss cross is drawn from the
+ * geometry of /kreuz/CH-Kreuz_7mm.svg.
+ *
+ * @author pschatzmann
+ */
+public class QRVectorRenderer {
+	// geometry of /kreuz/CH-Kreuz_7mm.svg: black square with a white border (stroke) and the white cross
+	private static final double CROSS_VIEWBOX = 19.8;
+	private static final double CROSS_BORDER = 0.7 + 1.4357 / 2;
+	private static final double[][] CROSS_BARS = { { 8.3, 4, 3.3, 11 }, { 4.4, 7.9, 11, 3.3 } };
+
+	/**
+	 * Merges the dark modules into rectangles
+	 *
+	 * @param modules a {@link com.google.zxing.common.BitMatrix} object with one pixel per module
+	 * @return a {@link java.util.List} of x, y, width, height in modules
+	 */
+	public static List<int[]> getRectangles(BitMatrix modules) {
+		List<int[]> result = new ArrayList();
+		Map<Long, int[]> open = new HashMap();
+		int width = modules.getWidth();
+		BitArray row = new BitArray(width);
+		for (int y = 0; y < modules.getHeight(); y++) {
+			row = modules.getRow(y, row);
+			Map<Long, int[]> next = new HashMap();
+			int x = row.getNextSet(0);
+			while (x < width) {
+				int end = row.getNextUnset(x);
+				Long key = ((long) x << 32) | end;
+				int[] rect = open.get(key);
+				if (rect != null) {
+					rect[3]++;
+				} else {
+					rect = new int[] { x, y, end - x, 1 };
+					result.add(rect);
+				}
+				next.put(key, rect);
+				x = row.getNextSet(end);
+			}
+			open = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the SVG path data for the rectangles
+	 *
+	 * @param rectangles a {@link java.util.List} object
+	 * @return a {@link java.lang.String} object
+	 */
+	public static String toSVGPath(List<int[]> rectangles) {
+		StringBuilder sb = new StringBuilder(rectangles.size() * 20);
+		for (int[] r : rectangles) {
+			sb.append('M').append(r[0]).append(' ').append(r[1]);
+			sb.append('h').append(r[2]);
+			sb.append('v').append(r[3]);
+			sb.append('h').append(-r[2]);
+			sb.append('z');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a SVG document with the QR code. The view box is measured in modules.
+	 *
+	 * @param modules a {@link com.google.zxing.common.BitMatrix} object with one pixel per module
+	 * @param mm the printed size in mm
+	 * @param overlay SVG elements which are added at the end (in module coordinates) or null
+	 * @return a {@link java.lang.String} object
+	 */
+	public static String toSVG(BitMatrix modules, double mm, String overlay) {
+		int n = modules.getWidth();
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"").append(format(mm))
+				.append("mm\" height=\"").append(format(mm)).append("mm\" viewBox=\"0 0 ").append(n).append(' ')
+				.append(n).append("\" shape-rendering=\"crispEdges\">\n");
+		sb.append("<rect width=\"").append(n).append("\" height=\"").append(n).append("\" fill=\"#FFFFFF\"/>\n");
+		sb.append("<path fill=\"#000000\" d=\"").append(toSVGPath(getRectangles(modules))).append("\"/>\n");
+		if (overlay != null) {
+			sb.append(overlay);
+		}
+		sb.append("</svg>\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the swiss cross as SVG elements
+	 *
+	 * @param x a double
+	 * @param y a double
+	 * @param size a double
+	 * @return a {@link java.lang.String} object
+	 */
+	public static String getSwissCrossSVG(double x, double y, double size) {
+		double k = size / CROSS_VIEWBOX;
+		StringBuilder sb = new StringBuilder();
+		sb.append("<g transform=\"translate(").append(format(x)).append(' ').append(format(y)).append(") scale(")
+				.append(format(k)).append(")\">\n");
+		sb.append("<rect width=\"").append(format(CROSS_VIEWBOX)).append("\" height=\"").append(format(CROSS_VIEWBOX))
+				.append("\" fill=\"#FFFFFF\"/>\n");
+		double inner = CROSS_VIEWBOX - 2 * CROSS_BORDER;
+		sb.append("<rect x=\"").append(format(CROSS_BORDER)).append("\" y=\"").append(format(CROSS_BORDER))
+				.append("\" width=\"").append(format(inner)).append("\" height=\"").append(format(inner))
+				.append("\" fill=\"#000000\"/>\n");
+		for (double[] bar : CROSS_BARS) {
+			sb.append("<rect x=\"").append(format(bar[0])).append("\" y=\"").append(format(bar[1]))
+					.append("\" width=\"").append(format(bar[2])).append("\" height=\"").append(format(bar[3]))
+					.append("\" fill=\"#FFFFFF\"/>\n");
+		}
+		sb.append("</g>\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Draws the QR code into the PDF content stream. x and y define the lower left
+	 * corner in user units.
+	 *
+	 * @param contentStream a {@link org.apache.pdfbox.pdmodel.PDPageContentStream} object
+	 * @param modules a {@link com.google.zxing.common.BitMatrix} object with one pixel per module
+	 * @param x a float
+	 * @param y a float
+	 * @param size a float
+	 * @throws java.io.IOException if any.
+	 */
+	public static void drawPDF(PDPageContentStream contentStream, BitMatrix modules, float x, float y, float size)
+			throws IOException {
+		float m = size / modules.getWidth();
+		contentStream.saveGraphicsState();
+		contentStream.setNonStrokingColor(Color.WHITE);
+		contentStream.addRect(x, y, size, size);
+		contentStream.fill();
+		contentStream.setNonStrokingColor(Color.BLACK);
+		for (int[] r : getRectangles(modules)) {
+			contentStream.addRect(x + r[0] * m, y + size - (r[1] + r[3]) * m, r[2] * m, r[3] * m);
+		}
+		contentStream.fill();
+		contentStream.restoreGraphicsState();
+	}
+
+	/**
+	 * Draws the swiss cross into the PDF content stream. x and y define the lower
+	 * left corner in user units.
+	 *
+	 * @param contentStream a {@link org.apache.pdfbox.pdmodel.PDPageContentStream} object
+	 * @param x a float
+	 * @param y a float
+	 * @param size a float
+	 * @throws java.io.IOException if any.
+	 */
+	public static void drawSwissCrossPDF(PDPageContentStream contentStream, float x, float y, float size)
+			throws IOException {
+		float k = (float) (size / CROSS_VIEWBOX);
+		contentStream.saveGraphicsState();
+		contentStream.setNonStrokingColor(Color.WHITE);
+		contentStream.addRect(x, y, size, size);
+		contentStream.fill();
+		contentStream.setNonStrokingColor(Color.BLACK);
+		float inner = (float) (CROSS_VIEWBOX - 2 * CROSS_BORDER) * k;
+		contentStream.addRect(x + (float) CROSS_BORDER * k, y + (float) CROSS_BORDER * k, inner, inner);
+		contentStream.fill();
+		contentStream.setNonStrokingColor(Color.WHITE);
+		for (double[] bar : CROSS_BARS) {
+			// svg coordinates start at the top
+			contentStream.addRect(x + (float) bar[0] * k, y + (float) (CROSS_VIEWBOX - bar[1] - bar[3]) * k,
+					(float) bar[2] * k, (float) bar[3] * k);
+		}
+		contentStream.fill();
+		contentStream.restoreGraphicsState();
+	}
+
+	/**
+	 * Formats a number with max 4 decimals independent of the locale
+	 */
+	static String format(double value) {
+		String result = String.valueOf(Math.round(value * 10000.0) / 10000.0);
+		return result.endsWith(".0") ? result.substring(0, result.length() - 2) : result;
+	}
+
+}
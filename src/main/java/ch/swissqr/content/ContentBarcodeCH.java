@@ -23,11 +23,14 @@ import ch.swissqr.barcode.QRBarcode;
 import ch.swissqr.barcode.QRSwissBarcode;
 import ch.swissqr.content.ch.Address;
 import ch.swissqr.content.ch.AlternativeSchema;
+import ch.swissqr.content.ch.Checksums;
 import ch.swissqr.content.ch.CreditorInformation;
 import ch.swissqr.content.ch.IAlternativeSchema;
 import ch.swissqr.content.ch.MapData;
 import ch.swissqr.content.ch.PaymentAmount;
 import ch.swissqr.content.ch.PaymentReference;
+import ch.swissqr.content.ch.PaymentReference.ReferenceType;
+import ch.swissqr.content.ch.ValidationPlan;
 import ch.swissqr.content.ch.formats.FormatException;
 import ch.swissqr.content.ch.formats.QRStringFormatSwiss;
 import ch.swissqr.errors.BarcodeException;
@@ -52,6 +55,43 @@ public class ContentBarcodeCH implements IContent {
 	public final static String VERSION = "0200";
 	/** Constant <code>CODING_TYPE="1"</code> */
 	public final static String CODING_TYPE = "1";
+	/**
+	 * Validation rules for the swiss barcode: {@link #check()} reports all
+	 * violations, {@link #isOK()} stops at the first one
+	 */
+	public static final ValidationPlan<ContentBarcodeCH> VALIDATION = new ValidationPlan<ContentBarcodeCH>()
+			.child(c -> c.creditorInformation, CreditorInformation.VALIDATION)
+			.when(c -> c.getUltimateCreditor().isDefined(),
+					new ValidationPlan<ContentBarcodeCH>().child(c -> c.ultimateCreditor, Address.getValidationPlan("UltimateCreditor")))
+			.when(c -> !StringUtils.isEmpty(c.debitor.getName()),
+					new ValidationPlan<ContentBarcodeCH>().child(c -> c.debitor, Address.getValidationPlan("Debitor")))
+			.child(c -> c.paymentReference, PaymentReference.VALIDATION)
+			.rule((c, errors) -> {
+				// a QR reference must be used with a QR-IBAN and a QR-IBAN only with a QR reference
+				String iban = c.creditorInformation.getIban();
+				if (!Checksums.isValidIban(iban)) {
+					return true;
+				}
+				boolean qrr = c.paymentReference.getReferenceType() == ReferenceType.QRR;
+				if (qrr == Checksums.isQrIban(iban)) {
+					return true;
+				}
+				if (errors != null) {
+					String msg = qrr ? "The reference type 'QRR' requires a QR-IBAN" : "The QR-IBAN (" + iban + ") requires the reference type 'QRR'";
+					errors.add(new Error("referenceType", msg));
+				}
+				return false;
+			})
+			.each(c -> c.getAlternativeSchema(), (IAlternativeSchema as, List<Error> errors) -> {
+				if (as instanceof AlternativeSchema) {
+					return AlternativeSchema.VALIDATION.validate((AlternativeSchema) as, errors);
+				}
+				Collection<? extends Error> result = as.check();
+				if (errors != null) {
+					errors.addAll(result);
+				}
+				return result.isEmpty();
+			});
 	private CreditorInformation creditorInformation = new CreditorInformation();
 	private Address ultimateCreditor = new Address();
 	private PaymentAmount paymentAmount = new PaymentAmount();
@@ -96,14 +136,23 @@ public class ContentBarcodeCH implements IContent {
 	 */
 	@JsonIgnore
 	public String getHeader() {
-		StringBuffer sb = new StringBuffer();
+		return appendHeader(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the barcode header information section
+	 *
+	 * @param sb a {@link java.lang.StringBuilder} object
+	 * @return the StringBuilder
+	 */
+	public StringBuilder appendHeader(StringBuilder sb) {
 		sb.append(QR_TYPE);
 		sb.append(StringUtils.CRLF);
 		sb.append(VERSION);
 		sb.append(StringUtils.CRLF);
 		sb.append(CODING_TYPE);
 		sb.append(StringUtils.CRLF);
-		return sb.toString();
+		return sb;
 	}
 
 	/**
@@ -174,22 +223,7 @@ public class ContentBarcodeCH implements IContent {
 	@Override
 	@JsonIgnore
 	public List<Error> check() {
-		List<Error> missingFields = new ArrayList();
-		missingFields.addAll(creditorInformation.check());
-		if (getUltimateCreditor().isDefined()) {
-			missingFields.addAll(ultimateCreditor.check("UltimateCreditor"));
-		}
-		
-		if (!StringUtils.isEmpty(this.debitor.getName())) {
-			missingFields.addAll(this.debitor.check("Debitor"));
-		}
-
-		missingFields.addAll(paymentReference.check());
-		
-		for (IAlternativeSchema as : this.getAlternativeSchema()) {
-			missingFields.addAll(as.check());
-		}
-		
+		List<Error> missingFields = VALIDATION.check(this);
 		if (!missingFields.isEmpty()) {
 			LOG.warn(missingFields.toString());
 		}
@@ -316,10 +350,24 @@ public class ContentBarcodeCH implements IContent {
 	@JsonIgnore
 	public String getContent() throws UnsupportedEncodingException {
 		String targetEncoding = "UTF-8"; // used to be "ISO-8859-1";
-		byte[] bytes = stringFormat.write(Arrays.asList(this)).getBytes(Charset.forName(targetEncoding));
+		String content = stringFormat.write(Arrays.asList(this));
+		// the conversion to bytes and back only changes unpaired surrogates
+		if (!hasSurrogates(content)) {
+			return content;
+		}
+		byte[] bytes = content.getBytes(Charset.forName(targetEncoding));
 		return new String(bytes, targetEncoding);
 	}
 
+	private static boolean hasSurrogates(String str) {
+		for (int j = 0; j < str.length(); j++) {
+			if (Character.isSurrogate(str.charAt(j))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Setter to define the CreditorInformation
 	 *
@@ -382,7 +430,7 @@ public class ContentBarcodeCH implements IContent {
 	@Override
 	@JsonIgnore
 	public boolean isOK() {
-		return this.check().isEmpty();
+		return VALIDATION.isValid(this);
 	}
 
 	/**
@@ -0,0 +1,74 @@
+package ch.swissqr.content;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * Registry of the content classes by their 'contentType' name with a
+ * constructor for each class, so that the data formats can create the content
+ * objects without reflection.
+ *
+ * @author pschatzmann
+ */
+public class ContentTypes {
+	private static final Map<String, Class<? extends IContent>> classes = new ConcurrentHashMap();
+	private static final Map<String, Supplier<IContent>> constructors = new ConcurrentHashMap();
+
+	static {
+		register(ContentBarcodeCH.class, ContentBarcodeCH::new);
+		register(ContentBarcodeEU.class, ContentBarcodeEU::new);
+		register(ContentTel.class, ContentTel::new);
+		register(ContentString.class, ContentString::new);
+		register(ContentSMS.class, ContentSMS::new);
+		register(ContentMail.class, ContentMail::new);
+		register(ContentVCard.class, ContentVCard::new);
+	}
+
+	/**
+	 * Registers a content class with its simple class name as 'contentType'
+	 *
+	 * @param cls a {@link java.lang.Class} object
+	 * @param constructor a {@link java.util.function.Supplier} object
+	 */
+	public static <T extends IContent> void register(Class<T> cls, Supplier<IContent> constructor) {
+		classes.put(cls.getSimpleName(), cls);
+		constructors.put(cls.getSimpleName(), constructor);
+	}
+
+	/**
+	 * Returns the content class for the 'contentType'
+	 *
+	 * @param contentType a {@link java.lang.String} object
+	 * @return the class or null if the contentType is not supported
+	 * @throws ch.swissqr.errors.BarcodeException if the contentType is empty
+	 */
+	public static Class<? extends IContent> getType(String contentType) throws BarcodeException {
+		if (StringUtils.isEmpty(contentType)) {
+			throw new BarcodeException("The field 'contentType' must not be empty");
+		}
+		return classes.get(contentType);
+	}
+
+	/**
+	 * Creates a new empty content object for the 'contentType'
+	 *
+	 * @param contentType a {@link java.lang.String} object
+	 * @return a {@link ch.swissqr.content.IContent} object
+	 * @throws ch.swissqr.errors.BarcodeException if the contentType is empty or not supported
+	 */
+	public static IContent newInstance(String contentType) throws BarcodeException {
+		if (StringUtils.isEmpty(contentType)) {
+			throw new BarcodeException("The field 'contentType' must not be empty");
+		}
+		Supplier<IContent> constructor = constructors.get(contentType);
+		if (constructor == null) {
+			throw new BarcodeException("The contentType is not supported: " + contentType);
+		}
+		return constructor.get();
+	}
+
+}
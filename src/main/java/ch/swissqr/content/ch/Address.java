@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -19,6 +20,7 @@ import ch.swissqr.utils.StringUtils;
 public class Address  {
 	private static Map<String, String> countries = new HashMap<String, String>();
 	private static IAddressParser addressParser = new AddressParser();
+	private static Map<String, ValidationPlan<Address>> validationPlans = new ConcurrentHashMap();
 	private String name = "";
 	private String street = "";
 	private String houseNumber = "";
@@ -282,18 +284,28 @@ public class Address  {
 	 * @return a {@link java.util.List} object
 	 */
 	public List<Error> check(String addressType) {
-		List<Error> result = new ArrayList();
-		StringUtils.check(addressType + "Name", true, 70, name, result);
-		if (getAddressType()==AddressType.S) {
-			StringUtils.check(addressType + "Street", false, 70, street, result);
-			StringUtils.check(addressType + "HouseNumber", false, 16, houseNumber, result);
-			StringUtils.check(addressType + "PostalCode", true, 16, postalCode, result);
-			StringUtils.check(addressType + "City", true, 35, city, result);
-		} else {
-			StringUtils.check(addressType + "AddressLine1", true, 70, street, result);
-			StringUtils.check(addressType + "AddressLine2", true, 70, houseNumber, result);	
-		}
-		return result;
+		return getValidationPlan(addressType).check(this);
+	}
+
+	/**
+	 * Provides the validation rules for the indicated address type (which is
+	 * used as prefix of the field names)
+	 *
+	 * @param addressType a {@link java.lang.String} object e.g. Creditor, UltimateCreditor, Debitor
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public static ValidationPlan<Address> getValidationPlan(String addressType) {
+		return validationPlans.computeIfAbsent(addressType, type -> new ValidationPlan<Address>()
+				.field(type + "Name", true, 70, a -> a.name)
+				.when(a -> a.getAddressType() == AddressType.S,
+						new ValidationPlan<Address>()
+							.field(type + "Street", false, 70, a -> a.street)
+							.field(type + "HouseNumber", false, 16, a -> a.houseNumber)
+							.field(type + "PostalCode", true, 16, a -> a.postalCode)
+							.field(type + "City", true, 35, a -> a.city),
+						new ValidationPlan<Address>()
+							.field(type + "AddressLine1", true, 70, a -> a.street)
+							.field(type + "AddressLine2", true, 70, a -> a.houseNumber)));
 	}
 
 	/**
@@ -313,7 +325,16 @@ public class Address  {
 	 */
 	@Override
 	public String toString() {
-		StringBuffer sb = new StringBuffer();
+		return appendTo(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the address lines in the format of the SwissQR message
+	 *
+	 * @param sb a {@link java.lang.StringBuilder} object
+	 * @return the StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
 		sb.append(StringUtils.str(getAddressType()));
 		sb.append(StringUtils.CRLF);
 		sb.append(StringUtils.str(name));
@@ -328,7 +349,7 @@ public class Address  {
 		sb.append(StringUtils.CRLF);
 		sb.append(StringUtils.isEmpty(name) ? "" : StringUtils.str(countryISO));
 		sb.append(StringUtils.CRLF);
-		return sb.toString();
+		return sb;
 	}
 
 	/**
@@ -15,6 +15,9 @@ import ch.swissqr.utils.StringUtils;
  * @author pschatzmann
  */
 public class AlternativeSchema implements IAlternativeSchema {
+	/** Validation rules for the alternative schema */
+	public static final ValidationPlan<AlternativeSchema> VALIDATION = new ValidationPlan<AlternativeSchema>()
+			.field("alternativeSchema", false, 100, as -> as.content);
 	private String title = "";
 	private String content = "";
 
@@ -130,9 +133,7 @@ public class AlternativeSchema implements IAlternativeSchema {
 	 * @return a {@link java.util.List} object
 	 */
 	public List<Error> check() {
-		List<Error> result = new ArrayList();
-		StringUtils.check("alternativeSchema", false, 100, content, result);
-		return result;
+		return VALIDATION.check(this);
 	}
 
 	/**
@@ -0,0 +1,259 @@
+package ch.swissqr.content.ch;
+
+/**
+ * Check digit validation for the IBAN (ISO 13616), the QR-IBAN, the QR
+ * reference (modulo 10 recursive) and the creditor reference (ISO 11649).
+ *
+ * <p>
+ * The checksums are calculated on the characters of the input with int
+ * arithmetic: no BigInteger and no intermediate strings are created. Spaces
+ * are ignored, so that formatted values (e.g. "CH44 3199 9123 0008 8901 2")
+ * are supported.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public final class Checksums {
+	private static final int[] MOD10_TABLE = { 0, 9, 4, 6, 8, 2, 7, 1, 3, 5 };
+	private static final int QR_IID_FROM = 30000;
+	private static final int QR_IID_TO = 31999;
+
+	private Checksums() {
+	}
+
+	/**
+	 * Returns true if the IBAN has a valid structure (2 letter country code, 2
+	 * check digits and up to 30 alphanumeric characters) and valid check digits
+	 *
+	 * @param iban a {@link java.lang.CharSequence} object
+	 * @return a boolean
+	 */
+	public static boolean isValidIban(CharSequence iban) {
+		int len = length(iban);
+		if (len < 15 || len > 34) {
+			return false;
+		}
+		if (!isLetter(charAt(iban, 0)) || !isLetter(charAt(iban, 1)) || !isDigit(charAt(iban, 2))
+				|| !isDigit(charAt(iban, 3))) {
+			return false;
+		}
+		return mod97(iban) == 1;
+	}
+
+	/**
+	 * Returns true if the IBAN is a valid swiss or liechtenstein QR-IBAN: the
+	 * institution id (position 5 to 9) must be in the range 30000 to 31999
+	 *
+	 * @param iban a {@link java.lang.CharSequence} object
+	 * @return a boolean
+	 */
+	public static boolean isQrIban(CharSequence iban) {
+		return isSwissIban(iban) && isValidIban(iban) && isQrIID(iban);
+	}
+
+	/**
+	 * Returns true if the IBAN is a swiss or liechtenstein IBAN (21 characters
+	 * starting with CH or LI)
+	 *
+	 * @param iban a {@link java.lang.CharSequence} object
+	 * @return a boolean
+	 */
+	public static boolean isSwissIban(CharSequence iban) {
+		if (length(iban) != 21) {
+			return false;
+		}
+		char c0 = Character.toUpperCase(charAt(iban, 0));
+		char c1 = Character.toUpperCase(charAt(iban, 1));
+		return (c0 == 'C' && c1 == 'H') || (c0 == 'L' && c1 == 'I');
+	}
+
+	/**
+	 * Returns true if the institution id of a swiss IBAN is in the QR-IID range
+	 */
+	private static boolean isQrIID(CharSequence iban) {
+		int iid = 0;
+		for (int pos = 4; pos < 9; pos++) {
+			char ch = charAt(iban, pos);
+			if (!isDigit(ch)) {
+				return false;
+			}
+			iid = iid * 10 + (ch - '0');
+		}
+		return iid >= QR_IID_FROM && iid <= QR_IID_TO;
+	}
+
+	/**
+	 * Returns true if the QR reference consists of 27 digits and the last digit
+	 * is the modulo 10 recursive check digit of the first 26 digits
+	 *
+	 * @param reference a {@link java.lang.CharSequence} object
+	 * @return a boolean
+	 */
+	public static boolean isValidQrReference(CharSequence reference) {
+		if (length(reference) != 27) {
+			return false;
+		}
+		int carry = 0;
+		int last = -1;
+		for (int j = 0; j < reference.length(); j++) {
+			char ch = reference.charAt(j);
+			if (ch == ' ') {
+				continue;
+			}
+			if (!isDigit(ch)) {
+				return false;
+			}
+			if (last >= 0) {
+				carry = MOD10_TABLE[(carry + last) % 10];
+			}
+			last = ch - '0';
+		}
+		return (10 - carry) % 10 == last;
+	}
+
+	/**
+	 * Calculates the modulo 10 recursive check digit of the digits
+	 *
+	 * @param digits a {@link java.lang.CharSequence} object
+	 * @return the check digit
+	 */
+	public static int getQrReferenceCheckDigit(CharSequence digits) {
+		int carry = 0;
+		for (int j = 0; j < digits.length(); j++) {
+			char ch = digits.charAt(j);
+			if (ch == ' ') {
+				continue;
+			}
+			if (!isDigit(ch)) {
+				throw new IllegalArgumentException("The QR reference must contain only digits: " + digits);
+			}
+			carry = MOD10_TABLE[(carry + ch - '0') % 10];
+		}
+		return (10 - carry) % 10;
+	}
+
+	/**
+	 * Returns true if the creditor reference starts with RF, has 2 check
+	 * digits and up to 21 alphanumeric characters and if the check digits are
+	 * valid
+	 *
+	 * @param reference a {@link java.lang.CharSequence} object
+	 * @return a boolean
+	 */
+	public static boolean isValidCreditorReference(CharSequence reference) {
+		int len = length(reference);
+		if (len < 5 || len > 25) {
+			return false;
+		}
+		if (Character.toUpperCase(charAt(reference, 0)) != 'R' || Character.toUpperCase(charAt(reference, 1)) != 'F'
+				|| !isDigit(charAt(reference, 2)) || !isDigit(charAt(reference, 3))) {
+			return false;
+		}
+		return mod97(reference) == 1;
+	}
+
+	/**
+	 * Calculates the 2 check digits of a creditor reference (ISO 11649) for
+	 * the indicated alphanumeric reference
+	 *
+	 * @param reference a {@link java.lang.CharSequence} object without the RF prefix
+	 * @return the check digits (2 to 98)
+	 */
+	public static int getCreditorReferenceCheckDigits(CharSequence reference) {
+		int remainder = 0;
+		for (int j = 0; j < reference.length(); j++) {
+			remainder = mod97(remainder, reference.charAt(j));
+		}
+		// RF00 is moved to the end
+		remainder = mod97(mod97(mod97(mod97(remainder, 'R'), 'F'), '0'), '0');
+		return 98 - remainder;
+	}
+
+	/**
+	 * Calculates the ISO 7064 modulo 97 remainder after moving the first 4
+	 * characters to the end. Returns -1 if there are invalid characters.
+	 */
+	private static int mod97(CharSequence value) {
+		int remainder = 0;
+		int start = 0;
+		int count = 0;
+		// skip the first 4 characters
+		while (count < 4) {
+			if (value.charAt(start++) != ' ') {
+				count++;
+			}
+		}
+		for (int j = start; j < value.length(); j++) {
+			remainder = mod97(remainder, value.charAt(j));
+			if (remainder < 0) {
+				return -1;
+			}
+		}
+		for (int j = 0; j < start; j++) {
+			remainder = mod97(remainder, value.charAt(j));
+			if (remainder < 0) {
+				return -1;
+			}
+		}
+		return remainder;
+	}
+
+	/**
+	 * Adds the character to the remainder: digits are added as one digit and
+	 * letters as 2 digits (A=10 .. Z=35).
+	 */
+	private static int mod97(int remainder, char ch) {
+		if (remainder < 0 || ch == ' ') {
+			return remainder;
+		}
+		if (isDigit(ch)) {
+			return (remainder * 10 + (ch - '0')) % 97;
+		}
+		if (isLetter(ch)) {
+			return (remainder * 100 + (Character.toUpperCase(ch) - 'A' + 10)) % 97;
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines the length without spaces
+	 */
+	private static int length(CharSequence value) {
+		if (value == null) {
+			return 0;
+		}
+		int result = 0;
+		for (int j = 0; j < value.length(); j++) {
+			if (value.charAt(j) != ' ') {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the character at the indicated position ignoring spaces
+	 */
+	private static char charAt(CharSequence value, int pos) {
+		int count = 0;
+		for (int j = 0; j < value.length(); j++) {
+			char ch = value.charAt(j);
+			if (ch != ' ') {
+				if (count == pos) {
+					return ch;
+				}
+				count++;
+			}
+		}
+		return ' ';
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	private static boolean isLetter(char ch) {
+		return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
+	}
+
+}
@@ -1,6 +1,5 @@
 package ch.swissqr.content.ch;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -13,6 +12,21 @@ import ch.swissqr.utils.StringUtils;
  * @author pschatzmann
  */
 public class CreditorInformation {
+	private static final List<String> COUNTRIES = Arrays.asList("CH","LI");
+	/** Validation rules for the creditor information */
+	public static final ValidationPlan<CreditorInformation> VALIDATION = new ValidationPlan<CreditorInformation>()
+			.field("iban", true, 21, ci -> ci.iban)
+			.when(ci -> ci.iban != null && ci.iban.length() > 2, (ci, errors) -> {
+				if (ci.iban.startsWith(COUNTRIES.get(0)) || ci.iban.startsWith(COUNTRIES.get(1))) {
+					return true;
+				}
+				if (errors != null) {
+					StringUtils.check("iban", false, COUNTRIES, ci.iban.substring(0, 2), errors);
+				}
+				return false;
+			})
+			.test("iban", Checksums::isValidIban, "has an invalid check digit", ci -> ci.iban)
+			.child(ci -> ci.getCreditorAddress(), Address.getValidationPlan("Creditor"));
  	private String iban = "";
  	private Address creditorAddress = new Address();
 
@@ -36,11 +50,25 @@ public class CreditorInformation {
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
-		StringBuffer sb = new StringBuffer();
+		return appendTo(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the IBAN and the creditor address in the format of the SwissQR
+	 * message
+	 *
+	 * @param sb a {@link java.lang.StringBuilder} object
+	 * @return the StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
 		sb.append(StringUtils.str(iban));
 		sb.append(StringUtils.CRLF);
-		sb.append(creditorAddress);
-		return sb.toString();
+		if (creditorAddress != null) {
+			creditorAddress.appendTo(sb);
+		} else {
+			sb.append(creditorAddress);
+		}
+		return sb;
 	}
 
 	/**
@@ -89,13 +117,7 @@ public class CreditorInformation {
 	 * @return a {@link java.util.List} object
 	 */
 	public List<Error> check() {
-		List<Error> result =  new ArrayList();
-		StringUtils.check("iban", true, 21, iban, result);
-		if (iban != null && iban.length()>2) {
-			StringUtils.check("iban", false, Arrays.asList("CH","LI"), iban.substring(0, 2), result);
-		}
-		result.addAll(this.getCreditorAddress().check("Creditor"));
-		return result;
+		return VALIDATION.check(this);
 	}
 	
 
@@ -0,0 +1,23 @@
+package ch.swissqr.content.ch;
+
+import java.util.List;
+
+import ch.swissqr.utils.Error;
+
+/**
+ * A single validation rule of a {@link ValidationPlan}
+ *
+ * @author pschatzmann
+ */
+@FunctionalInterface
+public interface IValidationRule<T> {
+	/**
+	 * Validates the object
+	 *
+	 * @param obj the validated object
+	 * @param errors the violations are added to this list. If it is null the
+	 *               validation stops at the first violation
+	 * @return true if there is no violation
+	 */
+	public boolean validate(T obj, List<Error> errors);
+}
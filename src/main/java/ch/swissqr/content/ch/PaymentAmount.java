@@ -180,7 +180,16 @@ public class PaymentAmount {
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
-		StringBuffer sb = new StringBuffer();
+		return appendTo(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the amount and the currency in the format of the SwissQR message
+	 *
+	 * @param sb a {@link java.lang.StringBuilder} object
+	 * @return the StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
 		sb.append(getAmountStr());
 		sb.append(StringUtils.CRLF);
 		sb.append(StringUtils.str(this.getCurrency()));
@@ -188,7 +197,7 @@ public class PaymentAmount {
 		//sb.append(StringUtils.CRLF);
 		//sb.append(getDateString());
 		sb.append(StringUtils.CRLF);
-		return sb.toString();
+		return sb;
 	}
 
 	/**
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import ch.swissqr.content.ContentBarcodeCH;
+import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.utils.Error;
 import ch.swissqr.utils.StringUtils;
 
@@ -18,6 +19,18 @@ public class PaymentReference {
 		QRR, SCOR, NON
 	}
 
+	/** Validation rules for the payment reference */
+	public static final ValidationPlan<PaymentReference> VALIDATION = new ValidationPlan<PaymentReference>()
+			.values("referenceType", true, Arrays.asList("QRR", "SCOR", "NON"), r -> r.referenceType.name())
+			.field("unstructuredMessage", false, 140, r -> r.reference)
+			.when(r -> r.referenceType != ReferenceType.NON,
+					new ValidationPlan<PaymentReference>().field("reference", true, 27, r -> r.reference),
+					new ValidationPlan<PaymentReference>().field("reference", false, 27, r -> r.reference))
+			.when(r -> r.referenceType == ReferenceType.QRR, new ValidationPlan<PaymentReference>()
+					.test("reference", Checksums::isValidQrReference, "is not a valid QR reference", r -> r.reference))
+			.when(r -> r.referenceType == ReferenceType.SCOR, new ValidationPlan<PaymentReference>()
+					.test("reference", Checksums::isValidCreditorReference, "is not a valid creditor reference", r -> r.reference));
+
 	private ReferenceType referenceType = ReferenceType.NON;
 	private String reference = "";
 	private String unstructuredMessage = "";
@@ -80,6 +93,19 @@ public class PaymentReference {
 		return reference;
 	}
 
+	/**
+	 * Defines the reference type and the next reference of the generator
+	 *
+	 * @param generator a {@link ch.swissqr.content.ch.ReferenceGenerator} object
+	 * @return a {@link ch.swissqr.content.ch.PaymentReference} object
+	 * @throws ch.swissqr.errors.BarcodeException if the sequence numbers are exhausted
+	 */
+	public PaymentReference reference(ReferenceGenerator generator) throws BarcodeException {
+		this.referenceType = generator.getReferenceType();
+		this.reference = generator.next();
+		return this;
+	}
+
 	/**
 	 * <p>reference.</p>
 	 *
@@ -117,15 +143,7 @@ public class PaymentReference {
 	 * @return a {@link java.util.List} object
 	 */
 	public List<Error> check() {
-		List<Error> result = new ArrayList();
-		StringUtils.check("referenceType", true, Arrays.asList("QRR", "SCOR", "NON"), referenceType.name(), result);
-		StringUtils.check("unstructuredMessage", false, 140, reference, result);
-		if (this.referenceType != ReferenceType.NON) {
-			StringUtils.check("reference", true, 27, reference, result);
-		} else {
-			StringUtils.check("reference", false, 27, reference, result);
-		}
-		return result;
+		return VALIDATION.check(this);
 	}
 
 	/**
@@ -160,7 +178,17 @@ public class PaymentReference {
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
-		StringBuffer sb = new StringBuffer();
+		return appendTo(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the reference, the unstructured message, the trailer and the bill
+	 * information in the format of the SwissQR message
+	 *
+	 * @param sb a {@link java.lang.StringBuilder} object
+	 * @return the StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
 		sb.append(this.referenceType);
 		sb.append(StringUtils.CRLF);
 		sb.append(StringUtils.str(this.reference));
@@ -172,7 +200,7 @@ public class PaymentReference {
 			sb.append(StringUtils.CRLF);
 			sb.append(toString(this.getBillInformation()));			
 		}
-		return sb.toString();
+		return sb;
 	}
 	
 	/**
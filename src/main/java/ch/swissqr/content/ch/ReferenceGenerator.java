@@ -0,0 +1,301 @@
+package ch.swissqr.content.ch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.swissqr.content.ch.PaymentReference.ReferenceType;
+import ch.swissqr.errors.BarcodeException;
+
+/**
+ * Generates valid QR references (QRR) and creditor references (SCOR) from a
+ * prefix (e.g. the customer number) and a sequence number (e.g. the invoice
+ * number).
+ *
+ * <p>
+ * A QR reference consists of the prefix, the zero padded sequence number
+ * (together 26 digits) and the modulo 10 recursive check digit. A creditor
+ * reference consists of RF, the 2 check digits, the prefix and the sequence
+ * number.
+ * </p>
+ *
+ * <p>
+ * The sequence numbers are handed out in blocks: each thread leases a block
+ * of numbers from the shared counter with a single atomic operation and then
+ * generates the references of the block without any synchronization. So the
+ * references are unique but not ordered across threads and the unused numbers
+ * of a block are lost when the generator is discarded.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class ReferenceGenerator {
+	private static final int QRR_LEN = 26;
+	private static final int SCOR_LEN = 21;
+	private final ReferenceType referenceType;
+	private final String prefix;
+	private final int blockSize;
+	private final long max;
+	private final AtomicLong sequence;
+	private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+	/**
+	 * Numbers which have been leased by a thread
+	 */
+	private static class Block {
+		long next = 0;
+		long last = -1;
+	}
+
+	/**
+	 * Defines a new generator
+	 *
+	 * @param referenceType QRR or SCOR
+	 * @param prefix        digits (QRR) or alphanumeric characters (SCOR) at the start of the reference e.g. the customer number
+	 * @param start         first sequence number
+	 * @param blockSize     number of sequence numbers which are leased by a thread at once
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 */
+	public ReferenceGenerator(ReferenceType referenceType, String prefix, long start, int blockSize)
+			throws BarcodeException {
+		this.referenceType = referenceType;
+		this.prefix = prefix == null ? "" : prefix.replace(" ", "").toUpperCase();
+		this.blockSize = Math.max(1, blockSize);
+		this.sequence = new AtomicLong(start);
+		int digits;
+		switch (referenceType) {
+		case QRR:
+			if (!isDigits(this.prefix)) {
+				throw new BarcodeException("The prefix of a QR reference must contain only digits: " + prefix);
+			}
+			digits = QRR_LEN - this.prefix.length();
+			break;
+		case SCOR:
+			if (!isAlphanumeric(this.prefix)) {
+				throw new BarcodeException("The prefix of a creditor reference must be alphanumeric: " + prefix);
+			}
+			digits = SCOR_LEN - this.prefix.length();
+			break;
+		default:
+			throw new BarcodeException("References can only be generated for QRR and SCOR");
+		}
+		if (digits < 1) {
+			throw new BarcodeException("The prefix is too long: " + prefix);
+		}
+		// the next free number max + 1 must not overflow
+		this.max = digits > 18 ? Long.MAX_VALUE - 1 : pow10(digits) - 1;
+		if (start < 0 || start > max) {
+			throw new BarcodeException("The start number " + start + " is not in the range 0 to " + max);
+		}
+	}
+
+	/**
+	 * Defines a new generator with a block size of 1000
+	 *
+	 * @param referenceType QRR or SCOR
+	 * @param prefix        digits (QRR) or alphanumeric characters (SCOR) e.g. the customer number
+	 * @param start         first sequence number
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 */
+	public ReferenceGenerator(ReferenceType referenceType, String prefix, long start) throws BarcodeException {
+		this(referenceType, prefix, start, 1000);
+	}
+
+	/**
+	 * Returns the next reference from the block of the current thread. Close to
+	 * the end of the range the last block contains only the remaining numbers.
+	 *
+	 * @return a {@link java.lang.String} object
+	 * @throws ch.swissqr.errors.BarcodeException if the sequence numbers are exhausted
+	 */
+	public String next() throws BarcodeException {
+		Block block = blocks.get();
+		if (block.next > block.last) {
+			long first = lease(blockSize, true);
+			block.next = first;
+			block.last = first + Math.min(blockSize - 1, max - first);
+		}
+		return create(block.next++);
+	}
+
+	/**
+	 * Returns the indicated number of references with consecutive sequence
+	 * numbers
+	 *
+	 * @param count a int
+	 * @return a {@link java.util.List} object
+	 * @throws ch.swissqr.errors.BarcodeException if the count is not positive or the sequence numbers are exhausted
+	 */
+	public List<String> next(int count) throws BarcodeException {
+		if (count < 1) {
+			throw new BarcodeException("The count must be positive: " + count);
+		}
+		long first = lease(count, false);
+		List<String> result = new ArrayList(count);
+		for (long number = first; number < first + count; number++) {
+			result.add(create(number));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the reference for the indicated sequence number
+	 *
+	 * @param number a long
+	 * @return a {@link java.lang.String} object
+	 * @throws ch.swissqr.errors.BarcodeException if the number is not valid
+	 */
+	public String create(long number) throws BarcodeException {
+		if (number < 0 || number > max) {
+			throw new BarcodeException("The number " + number + " is not in the range 0 to " + max);
+		}
+		if (referenceType == ReferenceType.QRR) {
+			char[] chars = new char[QRR_LEN + 1];
+			prefix.getChars(0, prefix.length(), chars, 0);
+			putNumber(number, chars, prefix.length(), QRR_LEN);
+			chars[QRR_LEN] = (char) ('0' + Checksums.getQrReferenceCheckDigit(new CharArray(chars, QRR_LEN)));
+			return new String(chars);
+		} else {
+			int numberLen = digits(number);
+			char[] chars = new char[4 + prefix.length() + numberLen];
+			prefix.getChars(0, prefix.length(), chars, 4);
+			putNumber(number, chars, 4 + prefix.length(), chars.length);
+			int check = Checksums.getCreditorReferenceCheckDigits(new CharArray(chars, 4, chars.length));
+			chars[0] = 'R';
+			chars[1] = 'F';
+			chars[2] = (char) ('0' + check / 10);
+			chars[3] = (char) ('0' + check % 10);
+			return new String(chars);
+		}
+	}
+
+	/**
+	 * Reserves the indicated number of sequence numbers. If partial is true
+	 * only the remaining numbers are reserved when there are less than count.
+	 * The counter is only moved if the numbers could be reserved.
+	 */
+	private long lease(int count, boolean partial) throws BarcodeException {
+		while (true) {
+			long first = sequence.get();
+			long remaining = max - first;
+			if (first < 0 || remaining < 0 || (!partial && remaining < count - 1)) {
+				throw new BarcodeException("The sequence numbers are exhausted for the prefix " + prefix);
+			}
+			long size = Math.min(count - 1, remaining) + 1;
+			if (sequence.compareAndSet(first, first + size)) {
+				return first;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next sequence number which has not been leased yet
+	 *
+	 * @return a long
+	 */
+	public long getNextSequence() {
+		return sequence.get();
+	}
+
+	/**
+	 * @return the reference type
+	 */
+	public ReferenceType getReferenceType() {
+		return referenceType;
+	}
+
+	/**
+	 * @return the prefix
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Writes the zero padded number right aligned into the range
+	 */
+	private static void putNumber(long number, char[] chars, int from, int to) {
+		for (int pos = to - 1; pos >= from; pos--) {
+			chars[pos] = (char) ('0' + number % 10);
+			number /= 10;
+		}
+	}
+
+	private static int digits(long number) {
+		int result = 1;
+		while (number >= 10) {
+			number /= 10;
+			result++;
+		}
+		return result;
+	}
+
+	private static long pow10(int exp) {
+		long result = 1;
+		for (int j = 0; j < exp; j++) {
+			result *= 10;
+		}
+		return result;
+	}
+
+	private static boolean isDigits(String str) {
+		for (int j = 0; j < str.length(); j++) {
+			char ch = str.charAt(j);
+			if (ch < '0' || ch > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAlphanumeric(String str) {
+		for (int j = 0; j < str.length(); j++) {
+			char ch = str.charAt(j);
+			if (!((ch >= '0' && ch <= '9') || (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * CharSequence view on a part of a char array, so that the check digits
+	 * can be calculated without creating a String
+	 */
+	private static final class CharArray implements CharSequence {
+		private final char[] chars;
+		private final int from;
+		private final int to;
+
+		CharArray(char[] chars, int to) {
+			this(chars, 0, to);
+		}
+
+		CharArray(char[] chars, int from, int to) {
+			this.chars = chars;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int length() {
+			return to - from;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[from + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new CharArray(chars, from + start, from + end);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, from, to - from);
+		}
+	}
+
+}
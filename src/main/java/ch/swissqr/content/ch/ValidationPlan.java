@@ -0,0 +1,246 @@
+package ch.swissqr.content.ch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import ch.swissqr.utils.Error;
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * Validation rules which are defined once (e.g. as static constant of the
+ * validated class) and then applied to any number of objects.
+ *
+ * <p>
+ * The rules can be evaluated in two modes: {@link #isValid(Object)} stops at
+ * the first violation and does not allocate anything, {@link #check(Object)}
+ * reports all violations. The error messages are only created for the rules
+ * which fail and they are identical to the messages of
+ * {@link StringUtils#check(String, boolean, int, String, List)}.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class ValidationPlan<T> implements IValidationRule<T> {
+	private IValidationRule<T>[] rules = new IValidationRule[0];
+
+	/**
+	 * Adds a rule
+	 *
+	 * @param rule a {@link ch.swissqr.content.ch.IValidationRule} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public ValidationPlan<T> rule(IValidationRule<T> rule) {
+		rules = Arrays.copyOf(rules, rules.length + 1);
+		rules[rules.length - 1] = rule;
+		return this;
+	}
+
+	/**
+	 * Checks that the value is not too long and not empty if it is mandatory
+	 *
+	 * @param fieldName a {@link java.lang.String} object
+	 * @param mandatory a boolean
+	 * @param maxLen a int
+	 * @param value a {@link java.util.function.Function} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public ValidationPlan<T> field(String fieldName, boolean mandatory, int maxLen, Function<T, String> value) {
+		return rule((obj, errors) -> {
+			String str = value.apply(obj);
+			if ((mandatory && StringUtils.isEmpty(str)) || (str != null && str.length() > maxLen)) {
+				if (errors != null) {
+					StringUtils.check(fieldName, mandatory, maxLen, str, errors);
+				}
+				return false;
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * Checks that the value is one of the indicated values and not empty if it
+	 * is mandatory
+	 *
+	 * @param fieldName a {@link java.lang.String} object
+	 * @param mandatory a boolean
+	 * @param values a {@link java.util.List} object
+	 * @param value a {@link java.util.function.Function} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public ValidationPlan<T> values(String fieldName, boolean mandatory, List<String> values, Function<T, String> value) {
+		return rule((obj, errors) -> {
+			String str = value.apply(obj);
+			if ((mandatory && StringUtils.isEmpty(str)) || !values.contains(str)) {
+				if (errors != null) {
+					StringUtils.check(fieldName, mandatory, values, str, errors);
+				}
+				return false;
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * Checks the value with the indicated predicate. Empty values are not
+	 * checked: use {@link #field(String, boolean, int, Function)} for mandatory
+	 * fields.
+	 *
+	 * @param fieldName a {@link java.lang.String} object
+	 * @param test a {@link java.util.function.Predicate} object
+	 * @param description describes the violation e.g. "has an invalid check digit"
+	 * @param value a {@link java.util.function.Function} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public ValidationPlan<T> test(String fieldName, Predicate<String> test, String description, Function<T, String> value) {
+		return rule((obj, errors) -> {
+			String str = value.apply(obj);
+			if (StringUtils.isEmpty(str) || test.test(str)) {
+				return true;
+			}
+			if (errors != null) {
+				errors.add(new Error(fieldName, "The field '" + fieldName + "' (" + str + ") " + description));
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * Applies the rules of the plan only if the condition is true
+	 *
+	 * @param condition a {@link java.util.function.Predicate} object
+	 * @param plan a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public ValidationPlan<T> when(Predicate<T> condition, IValidationRule<T> plan) {
+		return rule((obj, errors) -> !condition.test(obj) || plan.validate(obj, errors));
+	}
+
+	/**
+	 * Applies the first plan if the condition is true and the second plan
+	 * otherwise
+	 *
+	 * @param condition a {@link java.util.function.Predicate} object
+	 * @param plan a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 * @param otherwise a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public ValidationPlan<T> when(Predicate<T> condition, IValidationRule<T> plan, IValidationRule<T> otherwise) {
+		return rule((obj, errors) -> condition.test(obj) ? plan.validate(obj, errors) : otherwise.validate(obj, errors));
+	}
+
+	/**
+	 * Applies the plan to a child object
+	 *
+	 * @param child a {@link java.util.function.Function} object
+	 * @param plan a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public <C> ValidationPlan<T> child(Function<T, C> child, IValidationRule<C> plan) {
+		return rule((obj, errors) -> plan.validate(child.apply(obj), errors));
+	}
+
+	/**
+	 * Applies the plan to all elements of a collection
+	 *
+	 * @param children a {@link java.util.function.Function} object
+	 * @param plan a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 * @return a {@link ch.swissqr.content.ch.ValidationPlan} object
+	 */
+	public <C> ValidationPlan<T> each(Function<T, Collection<? extends C>> children, IValidationRule<C> plan) {
+		return rule((obj, errors) -> {
+			Collection<? extends C> collection = children.apply(obj);
+			boolean result = true;
+			if (collection != null) {
+				for (C child : collection) {
+					if (!plan.validate(child, errors)) {
+						result = false;
+						if (errors == null) {
+							break;
+						}
+					}
+				}
+			}
+			return result;
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean validate(T obj, List<Error> errors) {
+		boolean result = true;
+		for (IValidationRule<T> rule : rules) {
+			if (!rule.validate(obj, errors)) {
+				result = false;
+				if (errors == null) {
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if there are no violations. The validation stops at the
+	 * first violation.
+	 *
+	 * @param obj a T object
+	 * @return a boolean
+	 */
+	public boolean isValid(T obj) {
+		return validate(obj, null);
+	}
+
+	/**
+	 * Validates an array of objects in one pass
+	 *
+	 * @param objects an array of T objects
+	 * @return the result of {@link #isValid(Object)} for each object
+	 */
+	public boolean[] isValid(T[] objects) {
+		boolean[] result = new boolean[objects.length];
+		for (int j = 0; j < objects.length; j++) {
+			result[j] = validate(objects[j], null);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all violations
+	 *
+	 * @param obj a T object
+	 * @return a {@link java.util.List} object
+	 */
+	public List<Error> check(T obj) {
+		List<Error> result = new ArrayList();
+		validate(obj, result);
+		return result;
+	}
+
+	/**
+	 * Returns the violations of all objects. The file name of the errors is
+	 * set to the record number (starting with 1).
+	 *
+	 * @param objects a {@link java.lang.Iterable} object
+	 * @return a {@link java.util.List} object
+	 */
+	public List<Error> check(Iterable<? extends T> objects) {
+		List<Error> result = new ArrayList();
+		int count = 0;
+		for (T obj : objects) {
+			count++;
+			int start = result.size();
+			if (!validate(obj, result)) {
+				String fileName = String.valueOf(count);
+				for (int j = start; j < result.size(); j++) {
+					result.get(j).setFileName(fileName);
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -7,18 +7,16 @@ import java.io.Writer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.log4j.Logger;
 
-import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.IContent;
-import ch.swissqr.content.ch.MapData;
 import ch.swissqr.utils.StringUtils;
 
 /**
@@ -71,17 +69,16 @@ public class CSVFormat implements IFormat {
 	@Override
 	public List<IContent> read(String csv) throws FormatException, IOException, ParseException {
 		List<IContent> result = new ArrayList();
-
-		Iterable<CSVRecord> records = org.apache.commons.csv.CSVFormat.DEFAULT.withFirstRecordAsHeader()
-				.parse(new StringReader(csv));
-		for (CSVRecord record : records) {
-			try {
-			String type = record.get("contentType");
-			IContent c = (IContent)Class.forName("ch.swissqr.content."+type).newInstance();
-			c.setDataMap((Map)record.toMap());
-			result.add(c);
-			} catch(Exception ex) {
-				LOG.error(ex,ex);
+		try (CSVStreamReader reader = new CSVStreamReader(new StringReader(csv))) {
+			Iterator<ContentRecord> records = reader.iterator(false);
+			while (records.hasNext()) {
+				ContentRecord record = records.next();
+				if (record.getContent() != null) {
+					result.add(record.getContent());
+				}
+				if (!record.getErrors().isEmpty()) {
+					LOG.error(record);
+				}
 			}
 		}
 		return result;
@@ -0,0 +1,224 @@
+package ch.swissqr.content.ch.formats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import ch.swissqr.content.ContentTypes;
+import ch.swissqr.content.IContent;
+import ch.swissqr.utils.Error;
+
+/**
+ * Reads CSV content (with a header line and a 'contentType' column) one record
+ * at a time. Each record is converted into a {@link ContentRecord} with its
+ * line number and the conversion (and optionally the check) errors, so that
+ * invalid records are reported instead of stopping the processing.
+ *
+ * The records can be processed as parallel stream: the parser reads the
+ * records sequentially and hands them out in batches of a fixed size, so only
+ * a few batches are in memory at the same time.
+ *
+ * @author pschatzmann
+ */
+public class CSVStreamReader implements Closeable {
+	private static final int BATCH_SIZE = 256;
+	private final CSVParser parser;
+
+	/**
+	 * Reads the CSV from the input stream in UTF-8
+	 *
+	 * @param in a {@link java.io.InputStream} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public CSVStreamReader(InputStream in) throws FormatException {
+		this(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads the CSV from the reader
+	 *
+	 * @param reader a {@link java.io.Reader} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public CSVStreamReader(Reader reader) throws FormatException {
+		try {
+			this.parser = org.apache.commons.csv.CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader);
+		} catch (IOException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Returns the records in the order of the input
+	 *
+	 * @param check if true the errors of {@link IContent#check()} are added to the record
+	 * @return a {@link java.util.Iterator} object
+	 */
+	public Iterator<ContentRecord> iterator(boolean check) {
+		LineIterator it = new LineIterator();
+		return new Iterator<ContentRecord>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public ContentRecord next() {
+				return toContentRecord(it.next(), check);
+			}
+		};
+	}
+
+	/**
+	 * Returns the records as stream. The records are converted (and checked) in
+	 * parallel if the stream is parallel.
+	 *
+	 * @param check if true the errors of {@link IContent#check()} are added to the record
+	 * @param parallel a boolean
+	 * @return a {@link java.util.stream.Stream} object
+	 */
+	public Stream<ContentRecord> stream(boolean check, boolean parallel) {
+		return StreamSupport.stream(new BatchSpliterator(new LineIterator()), parallel)
+				.map(line -> toContentRecord(line, check));
+	}
+
+	/**
+	 * Counts the records with a supported 'contentType' which are of the
+	 * indicated class without creating the content objects.
+	 *
+	 * @param cls a {@link java.lang.Class} object e.g. IContent.class for all records
+	 * @return a int
+	 */
+	public int count(Class<? extends IContent> cls) {
+		int result = 0;
+		for (CSVRecord record : parser) {
+			String type = record.isMapped("contentType") && record.isSet("contentType") ? record.get("contentType") : "";
+			try {
+				Class<? extends IContent> contentClass = ContentTypes.getType(type);
+				if (contentClass != null && cls.isAssignableFrom(contentClass)) {
+					result++;
+				}
+			} catch (Exception ex) {
+				// empty contentType: reported when the records are read
+			}
+		}
+		return result;
+	}
+
+	private static ContentRecord toContentRecord(Line line, boolean check) {
+		List<Error> errors = new ArrayList();
+		IContent content = null;
+		try {
+			CSVRecord record = line.record;
+			if (!record.isConsistent()) {
+				errors.add(new Error("The number of values does not match the header"));
+			}
+			Map<String, String> values = record.toMap();
+			content = ContentTypes.newInstance(values.get("contentType"));
+			content.setDataMap((Map) values);
+			if (check) {
+				errors.addAll(content.check());
+			}
+		} catch (Exception ex) {
+			errors.add(new Error(ex));
+			content = null;
+		}
+		return new ContentRecord(line.number, content, errors);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+
+	/**
+	 * CSV record with the line number at which it starts
+	 */
+	private static class Line {
+		final long number;
+		final CSVRecord record;
+
+		Line(long number, CSVRecord record) {
+			this.number = number;
+			this.record = record;
+		}
+	}
+
+	/**
+	 * Determines the line number before the parser reads the next record
+	 */
+	private class LineIterator implements Iterator<Line> {
+		private final Iterator<CSVRecord> records = parser.iterator();
+		private Line next;
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				long number = parser.getCurrentLineNumber() + 1;
+				if (records.hasNext()) {
+					next = new Line(number, records.next());
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public Line next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Line result = next;
+			next = null;
+			return result;
+		}
+	}
+
+	/**
+	 * Splits the sequential records into batches of a fixed size
+	 */
+	private static class BatchSpliterator extends Spliterators.AbstractSpliterator<Line> {
+		private final Iterator<Line> it;
+
+		BatchSpliterator(Iterator<Line> it) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.it = it;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Line> action) {
+			if (!it.hasNext()) {
+				return false;
+			}
+			action.accept(it.next());
+			return true;
+		}
+
+		@Override
+		public Spliterator<Line> trySplit() {
+			Object[] batch = new Object[BATCH_SIZE];
+			int n = 0;
+			while (n < BATCH_SIZE && it.hasNext()) {
+				batch[n++] = it.next();
+			}
+			return n == 0 ? null : Spliterators.spliterator(batch, 0, n, Spliterator.ORDERED | Spliterator.NONNULL);
+		}
+	}
+
+}
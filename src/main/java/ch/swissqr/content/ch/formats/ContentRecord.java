@@ -0,0 +1,78 @@
+package ch.swissqr.content.ch.formats;
+
+import java.util.List;
+
+import ch.swissqr.content.IContent;
+import ch.swissqr.utils.Error;
+
+/**
+ * Content object which was read from a data format together with the line
+ * number of the record and the errors which were found while converting or
+ * checking it. If the record could not be converted the content is null.
+ *
+ * @author pschatzmann
+ */
+public class ContentRecord {
+	private final long lineNumber;
+	private final IContent content;
+	private final List<Error> errors;
+
+	/**
+	 * <p>Constructor for ContentRecord.</p>
+	 *
+	 * @param lineNumber a long
+	 * @param content a {@link ch.swissqr.content.IContent} object
+	 * @param errors a {@link java.util.List} object
+	 */
+	public ContentRecord(long lineNumber, IContent content, List<Error> errors) {
+		this.lineNumber = lineNumber;
+		this.content = content;
+		this.errors = errors;
+		for (Error error : errors) {
+			error.setFileName(String.valueOf(lineNumber));
+		}
+	}
+
+	/**
+	 * Returns the line number at which the record starts
+	 *
+	 * @return a long
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Returns the content object or null if the record could not be converted
+	 *
+	 * @return a {@link ch.swissqr.content.IContent} object
+	 */
+	public IContent getContent() {
+		return content;
+	}
+
+	/**
+	 * Returns the errors. The file name of the errors is the line number.
+	 *
+	 * @return a {@link java.util.List} object
+	 */
+	public List<Error> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns true if the record was converted without errors
+	 *
+	 * @return a boolean
+	 */
+	public boolean isOK() {
+		return content != null && errors.isEmpty();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "line " + lineNumber + ": " + errors;
+	}
+
+}
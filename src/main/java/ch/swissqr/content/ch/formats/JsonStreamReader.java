@@ -0,0 +1,181 @@
+package ch.swissqr.content.ch.formats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.swissqr.content.ContentTypes;
+import ch.swissqr.content.IContent;
+import ch.swissqr.errors.BarcodeException;
+
+/**
+ * Reads a json array of content objects one record at a time. Only the current
+ * record is kept in memory: it is read as json tree to determine the
+ * 'contentType' and then converted directly into the corresponding content
+ * class (see {@link ContentTypes}). Records with an unknown 'contentType' are ignored.
+ *
+ * The reader can be used as Iterator: errors are reported as RuntimeException
+ * with the {@link FormatException} as cause.
+ *
+ * @author pschatzmann
+ */
+public class JsonStreamReader implements Iterator<IContent>, Closeable {
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private final JsonParser parser;
+	private IContent next;
+	private boolean started = false;
+	private boolean finished = false;
+
+	static {
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	}
+
+	/**
+	 * Reads the json from the input stream
+	 *
+	 * @param in a {@link java.io.InputStream} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public JsonStreamReader(InputStream in) throws FormatException {
+		try {
+			this.parser = mapper.getFactory().createParser(in);
+		} catch (IOException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Reads the json from the string
+	 *
+	 * @param json a {@link java.lang.String} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public JsonStreamReader(String json) throws FormatException {
+		try {
+			this.parser = mapper.getFactory().createParser(json);
+		} catch (IOException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Reads the next record
+	 *
+	 * @return the next content object or null at the end of the array
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public IContent read() throws FormatException {
+		try {
+			while (nextRecord()) {
+				JsonNode node = mapper.readTree(parser);
+				Class<? extends IContent> type = ContentTypes.getType(node.path("contentType").asText(""));
+				if (type != null) {
+					return mapper.treeToValue(node, type);
+				}
+			}
+			return null;
+		} catch (FormatException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Counts the records with a known 'contentType' which are of the indicated
+	 * class without creating the content objects.
+	 *
+	 * @param cls a {@link java.lang.Class} object e.g. IContent.class for all records
+	 * @return a int
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public int count(Class<? extends IContent> cls) throws FormatException {
+		int result = 0;
+		try {
+			while (nextRecord()) {
+				String typeString = "";
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("contentType".equals(name) && value == JsonToken.VALUE_STRING) {
+						typeString = parser.getText();
+					} else {
+						parser.skipChildren();
+					}
+				}
+				Class<? extends IContent> type = ContentTypes.getType(typeString);
+				if (type != null && cls.isAssignableFrom(type)) {
+					result++;
+				}
+			}
+			return result;
+		} catch (FormatException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Moves to the start of the next record in the array
+	 */
+	private boolean nextRecord() throws IOException, BarcodeException {
+		if (finished) {
+			return false;
+		}
+		if (!started) {
+			started = true;
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new BarcodeException("The json content must be an array");
+			}
+		}
+		JsonToken token = parser.nextToken();
+		if (token == JsonToken.START_OBJECT) {
+			return true;
+		}
+		if (token == JsonToken.END_ARRAY || token == null) {
+			finished = true;
+			return false;
+		}
+		throw new BarcodeException("The json array must only contain objects");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = read();
+			} catch (FormatException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		return next != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public IContent next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		IContent result = next;
+		next = null;
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+
+}
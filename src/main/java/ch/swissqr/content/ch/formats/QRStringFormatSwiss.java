@@ -33,6 +33,9 @@ import ch.swissqr.utils.StringUtils;
  */
 public class QRStringFormatSwiss implements IFormat {
 	private final static Logger LOG = Logger.getLogger(QRStringFormatSwiss.class);
+	private final static int INITIAL_BUFFER = 1024;
+	private final static int MAX_BUFFER = 64 * 1024;
+	private final static ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_BUFFER));
 
 	/** {@inheritDoc} */
 	@Override
@@ -41,109 +44,92 @@ public class QRStringFormatSwiss implements IFormat {
 	}
 
 	/**
-	 * <p>parseList.</p>
+	 * Parses one or multiple barcode strings. A new barcode starts with a line
+	 * which contains only 'SPC'.
 	 *
-	 * @param str a {@link java.lang.String} object
+	 * @param str a {@link java.lang.CharSequence} object
 	 * @return a {@link java.util.List} object
 	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
 	 * @throws ch.swissqr.errors.BarcodeException if any.
 	 */
-	public List<IContent> parseList(String str) throws FormatException, BarcodeException {
-		// remove all cr
-		str = str.replaceAll("\\r", "");
+	public List<IContent> parseList(CharSequence str) throws FormatException, BarcodeException {
 		List<IContent> result = new ArrayList();
-		String barcodeStringArray[] = str.split("SPC" + "\\n");
-		for (String barcodeString : barcodeStringArray) {
-			IContent content = parse(barcodeString);
-			if (content != null) {
-				result.add(content);
-			}
+		LineCursor cursor = new LineCursor(str, true);
+		while (cursor.nextRecord()) {
+			result.add(parse(cursor));
 		}
 		return result;
 	}
 
 	/**
-	 * <p>parse.</p>
+	 * Parses a single barcode string
 	 *
-	 * @param str a {@link java.lang.String} object
-	 * @return a {@link ch.swissqr.content.IContent} object
+	 * @param str a {@link java.lang.CharSequence} object
+	 * @return a {@link ch.swissqr.content.IContent} object or null if the string is empty
 	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
 	 * @throws ch.swissqr.errors.BarcodeException if any.
 	 */
-	public IContent parse(String str) throws FormatException, BarcodeException {
-		if (StringUtils.isEmpty(str)) {
-			return null;
-		}
-		str = str.replaceAll("\\r", "");
-		if (!str.startsWith("SPC")) {
-			str = "SPC\n" + str;
-		}
-		String sa[] = str.split("\\n");
-		if (sa.length<10) {
-			throw new BarcodeException("Barcode is not a Swiss QR Code");
-		}
+	public IContent parse(CharSequence str) throws FormatException, BarcodeException {
+		LineCursor cursor = new LineCursor(str, false);
+		return cursor.nextRecord() ? parse(cursor) : null;
+	}
+
+	private IContent parse(LineCursor sa) throws FormatException, BarcodeException {
+		String version = sa.header();
+		sa.next("coding type");
+		String iban = sa.next("IBAN");
 
-		String version = sa[1];
-		int line = 2;		
-		String iban = sa[++line];
-		
 		Address creditor,ultimateCreditor;
-		if (!version.equals("0100")) {
-			creditor = getAddressV2(sa, line);
-			line = line + 7;
-			ultimateCreditor = getAddressV2(sa, line);
-			line = line + 7;
+		boolean v1 = version.equals("0100");
+		if (!v1) {
+			creditor = getAddressV2(sa);
+			ultimateCreditor = getAddressV2(sa);
 		} else {
-			creditor = getAddress(sa, line);
-			line = line + 6;
-			ultimateCreditor = getAddress(sa, line);
-			line = line + 6;
+			creditor = getAddress(sa);
+			ultimateCreditor = getAddress(sa);
 		}
 
-		// String ucName = sa[++line]; // 10
-
-		String value = sa[++line];
-		BigDecimal amount = StringUtils.isEmpty(value) ? null : new BigDecimal(value.replaceAll(" ", ""));
-		String currency = sa[++line];
+		String value = sa.next("amount");
+		BigDecimal amount = StringUtils.isEmpty(value) ? null : new BigDecimal(removeSpaces(value));
+		String currency = sa.next("currency");
 		
-		if (version.equals("0100")) {
-			String date = sa[++line];
+		if (v1) {
+			String date = sa.next("due date");
 			Date dueDate = getDate(date);
 		}
 
 		Address debitor;
-		if (!version.equals("0100")) {
-			debitor = getAddressV2(sa, line);
-			line = line + 7;
+		if (!v1) {
+			debitor = getAddressV2(sa);
 		} else {
-			debitor = getAddress(sa, line);
-			line = line + 6;			
+			debitor = getAddress(sa);
 		}
 
 		ReferenceType rt = ReferenceType.NON;
+		String referenceType = sa.next("reference type");
 		try {
-			if (!StringUtils.isEmpty(sa[++line])) {
-				rt = ReferenceType.valueOf(sa[line].trim());
+			if (!StringUtils.isEmpty(referenceType)) {
+				rt = ReferenceType.valueOf(referenceType.trim());
 			}
 		} catch (Exception ex) {
 			LOG.warn(ex);
 		}
 		
-	    String reference = nextLine(sa,++line);
-	    String message = nextLine(sa,++line);	 
+	    String reference = sa.optional();
+	    String message = sa.optional();
 	    
 	    String billInformation = null;
 	    // support for new information starting v2
-		if (!version.equals("0100")) {
-			String trailer = nextLine(sa,++line);
+		if (!v1) {
+			String trailer = sa.optional();
 		    if (!trailer.equalsIgnoreCase("EPD")) {
 		    	throw new BarcodeException("Message does not contain mandatory EPD");
 		    }
 		    
-			billInformation = nextLine(sa,++line);	
+			billInformation = sa.optional();
 		}
-		String alternativeSchemeParameters1 = nextLine(sa,++line);
-		String alternativeSchemeParameters2 = nextLine(sa,++line);
+		String alternativeSchemeParameters1 = sa.optional();
+		String alternativeSchemeParameters2 = sa.optional();
 
 		ContentBarcodeCH result = new ContentBarcodeCH();
 		result.creditor(new CreditorInformation().iban(iban).creditorAddress(creditor))
@@ -155,7 +141,7 @@ public class QRStringFormatSwiss implements IFormat {
 							.referenceType(rt)
 							.billInformation(billInformation));
 
-		List<IAlternativeSchema> alternativeSchemas = new ArrayList();
+		List<IAlternativeSchema> alternativeSchemas = new ArrayList(2);
 		if (!StringUtils.isEmpty(alternativeSchemeParameters1)) {
 			alternativeSchemas.add(new AlternativeSchema(alternativeSchemeParameters1));
 		}
@@ -166,8 +152,8 @@ public class QRStringFormatSwiss implements IFormat {
 		return result;
 	}
 
-	private String nextLine(String[] sa, int i) {
-		return i>=sa.length ? "": sa[i];
+	private static String removeSpaces(String value) {
+		return value.indexOf(' ') < 0 ? value : value.replace(" ", "");
 	}
 
 	private Date getDate(String date) throws FormatException {
@@ -182,24 +168,34 @@ public class QRStringFormatSwiss implements IFormat {
 		return dueDate;
 	}
 
-	private Address getAddress(String[] sa, int line) {
-		return new Address().name(sa[++line]).street(sa[++line]).houseNumber(sa[++line]).postalCode(sa[++line])
-				.city(sa[++line]).country(sa[++line]);
+	private Address getAddress(LineCursor sa) throws BarcodeException {
+		return new Address().name(sa.next("name")).street(sa.next("street")).houseNumber(sa.next("house number"))
+				.postalCode(sa.next("postal code")).city(sa.next("city")).country(sa.next("country"));
 	}
 
-	private Address getAddressV2(String[] sa, int line) {
-		// the address type is mandatory - if it is not available3 the address
+	private Address getAddressV2(LineCursor sa) throws BarcodeException {
+		// the address type is mandatory - if it is not available the address
 		// must be empty
-		String addressType = sa[++line];
+		String addressType = sa.next("address type");
 		Address result = new Address();
 		if (!StringUtils.isEmpty(addressType)) {
-			result.addressType(AddressType.valueOf(addressType)).name(sa[++line]);
-			if (result.getAddressType()==AddressType.S) {
-				result.street(sa[++line]).houseNumber(sa[++line]).postalCode(sa[++line])
-					.city(sa[++line]).country(sa[++line]);
+			AddressType type;
+			try {
+				type = AddressType.valueOf(addressType);
+			} catch (IllegalArgumentException ex) {
+				throw new BarcodeException("Invalid address type '" + addressType + "' in line " + sa.getLineNumber());
+			}
+			result.addressType(type).name(sa.next("name"));
+			if (type==AddressType.S) {
+				result.street(sa.next("street")).houseNumber(sa.next("house number"))
+					.postalCode(sa.next("postal code")).city(sa.next("city")).country(sa.next("country"));
 			} else {
-				result.addressLine1(sa[++line]).addressLine2(sa[++line]).country(sa[line+=3]);
+				result.addressLine1(sa.next("address line 1")).addressLine2(sa.next("address line 2"));
+				sa.skip(2);
+				result.country(sa.next("country"));
 			}
+		} else {
+			sa.skip(6);
 		}
 		return result;
 	}
@@ -207,32 +203,258 @@ public class QRStringFormatSwiss implements IFormat {
 	/** {@inheritDoc} */
 	@Override
 	public String write(List<IContent> list) {
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = BUFFER.get();
+		if (sb.capacity() > MAX_BUFFER) {
+			sb = new StringBuilder(INITIAL_BUFFER);
+			BUFFER.set(sb);
+		}
+		sb.setLength(0);
+		return write(list, sb).toString();
+	}
+
+	/**
+	 * Appends the barcode strings of the content objects to the indicated
+	 * StringBuilder, so that the same buffer can be reused for multiple
+	 * barcodes.
+	 *
+	 * @param list a {@link java.util.List} object
+	 * @param sb a {@link java.lang.StringBuilder} object
+	 * @return the StringBuilder
+	 */
+	public StringBuilder write(List<IContent> list, StringBuilder sb) {
 		for (IContent cObj : list) {
 			if (cObj instanceof ContentBarcodeCH) {
-				ContentBarcodeCH c = (ContentBarcodeCH) cObj;
-				sb.append(c.getHeader());
-				sb.append(c.getCreditorInformation());
-				sb.append(c.getUltimateCreditor());
-				sb.append(c.getPaymentAmount());
-				sb.append(c.getDebitor());
-				// payment reference, unstructured msg, billing information
-				sb.append(c.getPaymentReference());
-				// if there is no bill information and we have some alternative schema we add a empty line
-				if (!c.getPaymentReference().hasBillInformation() && !c.getAlternativeSchema().isEmpty()) {
-					sb.append(StringUtils.CRLF);
-				}
-				for (IAlternativeSchema as : c.getAlternativeSchema()) {
-					sb.append(StringUtils.CRLF);
-					sb.append(as.toString());
-				}
+				write((ContentBarcodeCH) cObj, sb);
 			}
 		}
-		return sb.toString();
+		return sb;
+	}
+
+	private void write(ContentBarcodeCH c, StringBuilder sb) {
+		c.appendHeader(sb);
+		if (c.getCreditorInformation() != null) {
+			c.getCreditorInformation().appendTo(sb);
+		} else {
+			sb.append(c.getCreditorInformation());
+		}
+		append(c.getUltimateCreditor(), sb);
+		if (c.getPaymentAmount() != null) {
+			c.getPaymentAmount().appendTo(sb);
+		} else {
+			sb.append(c.getPaymentAmount());
+		}
+		append(c.getDebitor(), sb);
+		// payment reference, unstructured msg, billing information
+		c.getPaymentReference().appendTo(sb);
+		// if there is no bill information and we have some alternative schema we add a empty line
+		if (!c.getPaymentReference().hasBillInformation() && !c.getAlternativeSchema().isEmpty()) {
+			sb.append(StringUtils.CRLF);
+		}
+		for (IAlternativeSchema as : c.getAlternativeSchema()) {
+			sb.append(StringUtils.CRLF);
+			sb.append(as.toString());
+		}
+	}
+
+	private void append(Address address, StringBuilder sb) {
+		if (address != null) {
+			address.appendTo(sb);
+		} else {
+			sb.append(address);
+		}
 	}
 
 	private String toString(Object str) {
 		return str==null? "" : str.toString();
 	}
 
+	/**
+	 * Single pass cursor over the lines of the barcode string without regex and
+	 * without intermediate arrays. CR characters are ignored, so that CRLF and
+	 * LF delimited lines are supported.
+	 */
+	private static final class LineCursor {
+		private static final String HEADER = "SPC";
+		private final CharSequence text;
+		private final int end;
+		private final boolean multipleRecords;
+		private int pos = 0;
+		private int lineNumber = 0;
+		private boolean recordEnd = false;
+		private boolean started = false;
+
+		LineCursor(CharSequence text, boolean multipleRecords) {
+			this.text = text == null ? "" : text;
+			this.end = this.text.length();
+			this.multipleRecords = multipleRecords;
+		}
+
+		/**
+		 * Moves to the start of the next record: leading empty lines and the
+		 * remaining lines of the previous record are skipped. The first record does
+		 * not need to start with the header.
+		 */
+		boolean nextRecord() {
+			recordEnd = false;
+			while (pos < end) {
+				int lineEnd = lineEnd(pos);
+				int nextStart = nextStart(lineEnd);
+				boolean header = isHeader(pos, lineEnd);
+				// a header which is directly followed by the next header is ignored
+				if (!(header && isHeader(nextStart, lineEnd(nextStart))) && (started ? header : !isBlank(pos, lineEnd))) {
+					started = true;
+					return true;
+				}
+				advance(lineEnd);
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the version: the header lines are optional
+		 */
+		String header() throws BarcodeException {
+			while (pos < end && startsWith(pos, HEADER)) {
+				advance(lineEnd(pos));
+			}
+			return next("version");
+		}
+
+		/**
+		 * Returns the next mandatory line
+		 */
+		String next(String field) throws BarcodeException {
+			if (!hasLine()) {
+				throw new BarcodeException("Barcode is not a Swiss QR Code: the field '" + field + "' is missing in line "
+						+ (lineNumber + 1));
+			}
+			return line();
+		}
+
+		/**
+		 * Returns the next line or an empty string at the end of the record
+		 */
+		String optional() {
+			return hasLine() ? line() : "";
+		}
+
+		/**
+		 * Skips the indicated number of mandatory lines
+		 */
+		void skip(int lines) throws BarcodeException {
+			for (int j = 0; j < lines; j++) {
+				if (!hasLine()) {
+					throw new BarcodeException("Barcode is not a Swiss QR Code: line " + (lineNumber + 1) + " is missing");
+				}
+				advance(lineEnd(pos));
+			}
+		}
+
+		int getLineNumber() {
+			return lineNumber;
+		}
+
+		private boolean hasLine() {
+			if (recordEnd || pos >= end) {
+				return false;
+			}
+			if (multipleRecords && isHeader(pos, lineEnd(pos))) {
+				recordEnd = true;
+				return false;
+			}
+			return true;
+		}
+
+		private String line() {
+			int lineEnd = lineEnd(pos);
+			int start = pos;
+			advance(lineEnd);
+			int stop = lineEnd;
+			while (stop > start && text.charAt(stop - 1) == '\r') {
+				stop--;
+			}
+			for (int j = start; j < stop; j++) {
+				if (text.charAt(j) == '\r') {
+					// rare: CR within the line
+					StringBuilder sb = new StringBuilder(stop - start);
+					for (int k = start; k < stop; k++) {
+						char ch = text.charAt(k);
+						if (ch != '\r') {
+							sb.append(ch);
+						}
+					}
+					return sb.toString();
+				}
+			}
+			return text.subSequence(start, stop).toString();
+		}
+
+		private void advance(int lineEnd) {
+			pos = nextStart(lineEnd);
+			lineNumber++;
+		}
+
+		private int nextStart(int lineEnd) {
+			return lineEnd < end && text.charAt(lineEnd) == '\n' ? lineEnd + 1 : lineEnd;
+		}
+
+		/**
+		 * Determines the end of the line which starts at the indicated position. If
+		 * multiple records are supported a header at the end of a line starts a new
+		 * record, because the records are written without line break between them.
+		 */
+		private int lineEnd(int from) {
+			int nl = end;
+			for (int j = from; j < end; j++) {
+				if (text.charAt(j) == '\n') {
+					nl = j;
+					break;
+				}
+			}
+			if (multipleRecords && nl < end) {
+				int stop = nl;
+				while (stop > from && text.charAt(stop - 1) == '\r') {
+					stop--;
+				}
+				int header = stop - HEADER.length();
+				if (header > from && startsWith(header, HEADER)) {
+					return header;
+				}
+			}
+			return nl;
+		}
+
+		private boolean isHeader(int from, int lineEnd) {
+			if (from >= end) {
+				return false;
+			}
+			int stop = lineEnd;
+			while (stop > from && text.charAt(stop - 1) == '\r') {
+				stop--;
+			}
+			return stop - from == HEADER.length() && startsWith(from, HEADER);
+		}
+
+		private boolean startsWith(int from, String prefix) {
+			if (end - from < prefix.length()) {
+				return false;
+			}
+			for (int j = 0; j < prefix.length(); j++) {
+				if (text.charAt(from + j) != prefix.charAt(j)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isBlank(int from, int lineEnd) {
+			for (int j = from; j < lineEnd; j++) {
+				if (!Character.isWhitespace(text.charAt(j))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 }
@@ -0,0 +1,244 @@
+package ch.swissqr.content.ch.formats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import ch.swissqr.content.ContentBarcodeCH;
+import ch.swissqr.content.ContentTypes;
+import ch.swissqr.content.IContent;
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * Reads the child elements of the xml &lt;root&gt; element one at a time with
+ * StAX. Only the current element is kept in memory: it is converted into a
+ * tree and bound to the content class with the same property names as in the
+ * json format.
+ *
+ * The content class is determined by the element name (e.g.
+ * &lt;ContentString&gt;) or by the 'contentType' child element. Elements without
+ * type information (e.g. &lt;list&gt;) are read as {@link ContentBarcodeCH}.
+ * Elements with an unknown 'contentType' are ignored.
+ *
+ * The reader can be used as Iterator: errors are reported as RuntimeException
+ * with the {@link FormatException} as cause.
+ *
+ * @author pschatzmann
+ */
+public class XmlContentReader implements Iterator<IContent>, Closeable {
+	private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private final XMLStreamReader reader;
+	private final Closeable source;
+	private IContent next;
+	private boolean started = false;
+	private boolean finished = false;
+
+	static {
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		mapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+		mapper.configure(DeserializationFeature.ACCEPT_EMPTY_STRING_AS_NULL_OBJECT, true);
+	}
+
+	/**
+	 * Reads the xml from the input stream
+	 *
+	 * @param in a {@link java.io.InputStream} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public XmlContentReader(InputStream in) throws FormatException {
+		try {
+			this.reader = factory.createXMLStreamReader(in);
+			this.source = in;
+		} catch (XMLStreamException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Reads the xml from the reader
+	 *
+	 * @param in a {@link java.io.Reader} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public XmlContentReader(Reader in) throws FormatException {
+		try {
+			this.reader = factory.createXMLStreamReader(in);
+			this.source = in;
+		} catch (XMLStreamException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Reads the next element
+	 *
+	 * @return the next content object or null at the end of the root element
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public IContent read() throws FormatException {
+		try {
+			while (nextRecord()) {
+				String name = reader.getLocalName();
+				JsonNode node = readElement();
+				Class<? extends IContent> type = getType(name, node);
+				if (type != null) {
+					return mapper.treeToValue(node, type);
+				}
+			}
+			return null;
+		} catch (FormatException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Counts the elements with a known content type which are of the indicated
+	 * class without creating the content objects.
+	 *
+	 * @param cls a {@link java.lang.Class} object e.g. IContent.class for all records
+	 * @return a int
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public int count(Class<? extends IContent> cls) throws FormatException {
+		int result = 0;
+		try {
+			while (nextRecord()) {
+				String name = reader.getLocalName();
+				Class<? extends IContent> type = getType(name, readElement());
+				if (type != null && cls.isAssignableFrom(type)) {
+					result++;
+				}
+			}
+			return result;
+		} catch (FormatException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	private static Class<? extends IContent> getType(String elementName, JsonNode node) throws BarcodeException {
+		Class<? extends IContent> type = ContentTypes.getType(elementName);
+		if (type != null) {
+			return type;
+		}
+		String contentType = node.path("contentType").asText("");
+		return StringUtils.isEmpty(contentType) ? ContentBarcodeCH.class : ContentTypes.getType(contentType);
+	}
+
+	/**
+	 * Moves to the start of the next child element of the root element
+	 */
+	private boolean nextRecord() throws XMLStreamException {
+		if (finished) {
+			return false;
+		}
+		if (!started) {
+			started = true;
+			reader.nextTag();
+		}
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		finished = true;
+		return false;
+	}
+
+	/**
+	 * Converts the current element into a tree: elements with children become
+	 * objects, repeated child elements arrays and all other elements text.
+	 */
+	private JsonNode readElement() throws XMLStreamException {
+		ObjectNode object = null;
+		StringBuilder text = new StringBuilder();
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (object == null) {
+					object = JsonNodeFactory.instance.objectNode();
+				}
+				String name = reader.getLocalName();
+				JsonNode child = readElement();
+				JsonNode existing = object.get(name);
+				if (existing == null) {
+					object.set(name, child);
+				} else if (existing.isArray()) {
+					((ArrayNode) existing).add(child);
+				} else {
+					object.putArray(name).add(existing).add(child);
+				}
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				text.append(reader.getText());
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		return object != null ? object : new TextNode(text.toString());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = read();
+			} catch (FormatException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		return next != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public IContent next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		IContent result = next;
+		next = null;
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		} finally {
+			source.close();
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+package ch.swissqr.content.ch.formats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.swissqr.content.IContent;
+
+/**
+ * Writes the content objects one at a time with StAX as &lt;list&gt; child
+ * elements of the xml &lt;root&gt; element. The elements use the same property
+ * names as the json format (including the 'contentType'), so that they can be
+ * read with the {@link XmlContentReader}.
+ *
+ * @author pschatzmann
+ */
+public class XmlContentWriter implements Closeable {
+	private static final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final String INDENT = "\t";
+	private final XMLStreamWriter writer;
+	private final Closeable target;
+
+	static {
+		mapper.setSerializationInclusion(Include.NON_NULL);
+	}
+
+	/**
+	 * Writes the xml in UTF-8 to the output stream
+	 *
+	 * @param os a {@link java.io.OutputStream} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public XmlContentWriter(OutputStream os) throws FormatException {
+		try {
+			this.writer = factory.createXMLStreamWriter(os, "UTF-8");
+			this.target = os;
+			writer.writeStartDocument("UTF-8", "1.0");
+			start();
+		} catch (XMLStreamException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	/**
+	 * Writes the xml to the writer
+	 *
+	 * @param out a {@link java.io.Writer} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public XmlContentWriter(Writer out) throws FormatException {
+		try {
+			this.writer = factory.createXMLStreamWriter(out);
+			this.target = out;
+			writer.writeStartDocument("1.0");
+			start();
+		} catch (XMLStreamException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	private void start() throws XMLStreamException {
+		writer.writeCharacters("\n");
+		writer.writeStartElement("root");
+	}
+
+	/**
+	 * Writes the content object as &lt;list&gt; element
+	 *
+	 * @param content a {@link ch.swissqr.content.IContent} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public void write(IContent content) throws FormatException {
+		try {
+			writeElement("list", mapper.valueToTree(content), 1);
+		} catch (Exception ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	private void writeElement(String name, JsonNode node, int depth) throws XMLStreamException {
+		if (node.isNull()) {
+			return;
+		}
+		if (node.isArray()) {
+			for (JsonNode element : node) {
+				writeElement(name, element, depth);
+			}
+			return;
+		}
+		indent(depth);
+		writer.writeStartElement(name);
+		if (node.isObject()) {
+			Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				writeElement(field.getKey(), field.getValue(), depth + 1);
+			}
+			indent(depth);
+		} else {
+			writer.writeCharacters(node.asText());
+		}
+		writer.writeEndElement();
+	}
+
+	private void indent(int depth) throws XMLStreamException {
+		writer.writeCharacters("\n");
+		for (int j = 0; j < depth; j++) {
+			writer.writeCharacters(INDENT);
+		}
+	}
+
+	/**
+	 * Writes the end of the root element and closes the output
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		} finally {
+			target.close();
+		}
+	}
+
+}
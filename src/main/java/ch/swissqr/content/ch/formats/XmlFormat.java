@@ -2,16 +2,15 @@ package ch.swissqr.content.ch.formats;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
-
 import ch.swissqr.content.IContent;
 
 /**
- * Serialization and Deserialization of XML
+ * Serialization and Deserialization of XML. The content objects are written
+ * and read one at a time with {@link XmlContentWriter} and
+ * {@link XmlContentReader}.
  *
  * @author pschatzmann
  */
@@ -21,13 +20,15 @@ public class XmlFormat  implements IFormat {
 	@Override
 	public String write(List<IContent> c) throws FormatException {
 		try {
-			XMLList content = new XMLList(c);				
-			JAXBContext context = JAXBContext.newInstance(XMLList.class);
-			Marshaller m = context.createMarshaller();
-			m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
 			StringWriter writer = new StringWriter();
-			m.marshal(content, writer);
+			try (XmlContentWriter xml = new XmlContentWriter(writer)) {
+				for (IContent content : c) {
+					xml.write(content);
+				}
+			}
 			return writer.toString();
+		} catch (FormatException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			throw new FormatException(ex);
 		}
@@ -36,11 +37,14 @@ public class XmlFormat  implements IFormat {
 	/** {@inheritDoc} */
 	@Override
 	public List<IContent> read(String xmlString) throws FormatException {
-		try {
-			JAXBContext context = JAXBContext.newInstance(XMLList.class);
-			Unmarshaller m = context.createUnmarshaller();
-			XMLList c = (XMLList) m.unmarshal(new StringReader(xmlString));
-			return c.getList();
+		List<IContent> result = new ArrayList();
+		try (XmlContentReader reader = new XmlContentReader(new StringReader(xmlString))) {
+			for (IContent content = reader.read(); content != null; content = reader.read()) {
+				result.add(content);
+			}
+			return result;
+		} catch (FormatException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			throw new FormatException(ex);
 		}
@@ -1,25 +1,26 @@
 package ch.swissqr.paymentslip;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
-import javax.imageio.ImageIO;
-
 import org.apache.log4j.Logger;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
+import org.apache.pdfbox.pdmodel.font.encoding.WinAnsiEncoding;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import ch.swissqr.barcode.QRSwissBarcode;
@@ -48,6 +49,8 @@ public class PaymentSlipPDF extends DocumentBase {
 	public static final float POINT_TO_MM = 0.352778f;
     private static final float POINTS_PER_INCH = 72;
 	private static final float USER_UNIT = 2.83441891578f; // mm to point
+	private static final float BARCODE_Y = 39;
+	private static final float BARCODE_SIZE = 46 * 1.10f;
 	private int leftX;
 	private int rightX;
 	private DateFormat dateFormat;
@@ -64,6 +67,27 @@ public class PaymentSlipPDF extends DocumentBase {
 	private float cutoffLimitInformation = 9.0f - 0.2f;
 	private float cutoffLimitButtom = 19.0f; // changed from 13.0f
 	private float cutoffLimitReceipt = 5.3f + 1.8f;
+	private boolean vectorBarcode = Boolean.valueOf(StringUtils.getProperty("vectorBarcode", "false"));
+	private PaymentSlipTemplate template;
+	private Map<String, PDImageXObject> images = new HashMap();
+	private PDDocument imageDocument;
+
+	static {
+		// the standard fonts are shared by all documents: we fill their lazy width and encoding
+		// caches once, so that slips which are created in parallel only read them
+		for (PDType1Font standardFont : Arrays.asList(PDType1Font.HELVETICA, PDType1Font.HELVETICA_BOLD)) {
+			for (String name : WinAnsiEncoding.INSTANCE.getCodeToNameMap().values()) {
+				String unicode = GlyphList.getAdobeGlyphList().toUnicode(name);
+				try {
+					if (unicode != null) {
+						standardFont.getStringWidth(unicode);
+					}
+				} catch (Exception ex) {
+					LOG.debug("Character not supported: " + name);
+				}
+			}
+		}
+	}
 
 	
 	/**
@@ -130,9 +154,7 @@ public class PaymentSlipPDF extends DocumentBase {
 		setup(format, content, requestedLangauge, printLines, printReceipt);
 
 		createPDFDocument();
-		printPerformationLines(getDocument());
-		createPaymentSlip(content);
-		createReceipt(content, requestedLangauge, format);
+		printPage(content, requestedLangauge, format);
 
 		if (autoClose) {
 			contentStream.close();
@@ -140,13 +162,66 @@ public class PaymentSlipPDF extends DocumentBase {
 		return this.contentStream;
 	}
 
+	/**
+	 * Prints the payment slip on a new page at the end of the current document.
+	 * So multiple slips can be printed into one document: the fonts and the
+	 * images of the template are added only once to the document.
+	 *
+	 * @throws ch.swissqr.errors.BarcodeException
+	 * @throws java.io.IOException
+	 * @param content a {@link ch.swissqr.content.ContentBarcodeCH} object
+	 * @param requestedLangauge a {@link java.lang.String} object
+	 * @param format a {@link ch.swissqr.paymentslip.PaymentSlipPDF.Format} object
+	 * @param printLines a boolean
+	 * @param printReceipt a boolean
+	 * @return the new {@link org.apache.pdfbox.pdmodel.PDPage} object
+	 */
+	public PDPage addPage(ContentBarcodeCH content, String requestedLangauge, Format format, boolean printLines, boolean printReceipt)
+			throws BarcodeException, IOException {
+
+		setup(format, content, requestedLangauge, printLines, printReceipt);
+
+		getDocument().addPage(blankPage);
+		contentStream = new PDPageContentStream(getDocument(), blankPage);
+		try {
+			printPage(content, requestedLangauge, format);
+		} finally {
+			contentStream.close();
+		}
+		return blankPage;
+	}
+
+	private void printPage(ContentBarcodeCH content, String requestedLangauge, Format format) throws BarcodeException, IOException {
+		printPerformationLines(getDocument());
+		createPaymentSlip(content);
+		createReceipt(content, requestedLangauge, format);
+	}
+
+	/**
+	 * Returns true if the object is an image of the template which is shared by
+	 * all pages of the current document
+	 */
+	boolean isSharedImage(COSBase obj) {
+		if (imageDocument == getDocument()) {
+			for (PDImageXObject image : images.values()) {
+				if (image.getCOSObject() == obj) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	private void setup(Format format, ContentBarcodeCH content, String requestedLangauge,boolean printLines, boolean printReceipt) throws IOException {
 		String language = getLangauge(content, requestedLangauge);
-		Locale.setDefault(new Locale(language, content.getDebitor().getCountryISO()));
-		dateFormat = DateFormat.getDateInstance(DateFormat.DEFAULT);
-		this.messages = getProperties(language);
+		// we do not change the default locale because slips can be created in parallel
+		dateFormat = DateFormat.getDateInstance(DateFormat.DEFAULT, new Locale(language, content.getDebitor().getCountryISO()));
+		this.template = PaymentSlipTemplate.get(format, language);
+		this.messages = template.getMessages();
+		this.fontBold = template.getFontBold();
+		this.font = template.getFont();
 		
-		setupPageFormat(format, printLines, printReceipt);
+		setupPageFormat(printLines, printReceipt);
 	}
 	
 
@@ -166,42 +241,13 @@ public class PaymentSlipPDF extends DocumentBase {
 		return language;
 	}
 
-	private void setupPageFormat(Format format, boolean printLines, boolean printReceipts) {
-		this.printLines = printLines;
-		this.printReceipt = printReceipts;
-		//float userUnit = 28.34646f; // 28.34008f
-		
-		switch (format) {
-		case A4:
-			blankPage = new PDPage(PDRectangle.A4);
-			blankPage.setCropBox(new PDRectangle(210f*USER_UNIT, 297f*USER_UNIT));
-			leftX = 65;
-			rightX = 120; 
-			break;
-		case A5:
-			blankPage = new PDPage(new PDRectangle(210f*USER_UNIT, 148f*USER_UNIT));
-			blankPage.setCropBox(new PDRectangle(210f*USER_UNIT, 148.5f*USER_UNIT));
-			leftX = 65;
-			rightX = 120; 
-			break;
-		case A6:
-			// support for others and A6
-			this.printLines = false;
-			this.printReceipt = false;
-			leftX = 5;
-			rightX = 60;
-			blankPage = new PDPage();
-			blankPage.setCropBox(new PDRectangle(148.0f*USER_UNIT, 105.0f*USER_UNIT));
-			break;
-		default:
-			// support for others and A6
-			leftX = 65;
-			rightX = 120; 
-			blankPage = new PDPage();
-			blankPage.setCropBox(new PDRectangle(210f*USER_UNIT, 148f*USER_UNIT));
-			break;
-		}
-
+	private void setupPageFormat(boolean printLines, boolean printReceipts) {
+		// A6 does not support the cut off lines and the receipt
+		this.printLines = printLines && template.isSupportsLines();
+		this.printReceipt = printReceipts && template.isSupportsLines();
+		this.leftX = template.getLeftX();
+		this.rightX = template.getRightX();
+		this.blankPage = template.createPage();
 	}
 
 	/**
@@ -235,10 +281,6 @@ public class PaymentSlipPDF extends DocumentBase {
 		PDDocument document = new PDDocument();
 		setDocument(document);
 		document.addPage(blankPage);
-
-		fontBold = PDType1Font.HELVETICA_BOLD;
-		font = PDType1Font.HELVETICA;
-
 		contentStream = new PDPageContentStream(document, blankPage);
 		return document;
 	}
@@ -408,23 +450,7 @@ public class PaymentSlipPDF extends DocumentBase {
 	
 
 	private List<String> splitLines(String string, float cutoffLimit, int maxWordLen) {
-		List<String> result = new ArrayList();
-		String tail = string;
-		while(tail.length()>0) {
-			String head = limitLength(tail, cutoffLimit);
-			String tmptail = tail.substring(head.length(),tail.length());
-			if (!tmptail.isEmpty() && !tmptail.startsWith(" ")) {				
-				int lastSpace = head.lastIndexOf(" ");
- 				head = head.substring(0,lastSpace);
- 				tail = tail.substring(head.length(),tail.length());
-			} else {
-				tail = tmptail;
-			}
-			tail = tail.trim();
-			result.add(head.trim());
-		}
-		
-		return result;
+		return TextFitter.get(font).split(string, getMaxWidth(cutoffLimit));
 	}
 
 
@@ -434,40 +460,53 @@ public class PaymentSlipPDF extends DocumentBase {
 
 	
 	private String limitLength(String str,float len) {
-		String result = str;
-		while(isTooLong(result, len)) {
-			result = result.substring(0,result.length()-1);
-		}
-		return result;
+		return TextFitter.get(font).limit(str, getMaxWidth(len));
 	}
 
-	private boolean isTooLong(String str, float limit) {
-		boolean result = getStringWidth(str)  / (1000.0 * USER_UNIT)>limit;
-		//LOG.debug(str+" -> "+ (result?"too long":"ok"));
-		return result;
+	/**
+	 * Converts the cutoff limit to the width in glyph space units
+	 */
+	private static double getMaxWidth(float limit) {
+		return limit * (1000.0 * USER_UNIT);
 	}
-	
-	
-	private float getStringWidth(String str) {
-		float result = 0;
-		try {
-			result = font.getStringWidth(str);
-		} catch (IOException e) {
-			LOG.error(e,e);
+
+	private void printBarcode(ContentBarcodeCH content, PDDocument document) throws Exception, IOException {
+		PDRectangle region = getBarcodeRegion();
+		QRSwissBarcode barcode = new QRSwissBarcode(content.isTest());
+		if (vectorBarcode) {
+			barcode.drawPDF(document, contentStream, content.getContent(), region.getLowerLeftX(), region.getLowerLeftY(), region.getWidth());
+		} else {
+			byte barcodeByteArray[] = barcode.create(content.getContent(), "png");
+			PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, barcodeByteArray, "swiss-qr");
+			contentStream.drawImage(pdImage, region.getLowerLeftX(), region.getLowerLeftY(), region.getWidth(), region.getHeight()); // 28
 		}
-		return result;
 	}
-	private Properties getProperties(String lang) throws IOException {
-		String resourceName = "language_" + lang;
-		messages = StringUtils.loadProperties(resourceName);
-		return messages;
+
+	/**
+	 * Returns the area of the QR code (incl. the quiet zone) on the payment
+	 * part in PDF user space units, e.g. to render only the QR section
+	 *
+	 * @return a {@link org.apache.pdfbox.pdmodel.common.PDRectangle} object
+	 */
+	public PDRectangle getBarcodeRegion() {
+		return getBarcodeRegion(leftX);
 	}
 
-	private void printBarcode(ContentBarcodeCH content, PDDocument document) throws Exception, IOException {
-		byte barcodeByteArray[] = new QRSwissBarcode(content.isTest()).create(content.getContent(), "png");
-		PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, barcodeByteArray, "swiss-qr");
-		float scaling = 1.10f;
-		contentStream.drawImage(pdImage, (leftX-2)*USER_UNIT, 39*USER_UNIT, 46*scaling*USER_UNIT, 46*scaling*USER_UNIT); // 28
+	/**
+	 * Returns the area of the QR code (incl. the quiet zone) on the payment
+	 * part of the indicated page format. The position does not depend on the
+	 * content, so it is available before the slip is created.
+	 *
+	 * @param format a {@link ch.swissqr.paymentslip.PaymentSlipPDF.Format} object
+	 * @return a {@link org.apache.pdfbox.pdmodel.common.PDRectangle} object
+	 */
+	public static PDRectangle getBarcodeRegion(Format format) {
+		return getBarcodeRegion(PaymentSlipTemplate.getLeftX(format));
+	}
+
+	private static PDRectangle getBarcodeRegion(int leftX) {
+		float size = BARCODE_SIZE * USER_UNIT;
+		return new PDRectangle((leftX - 2) * USER_UNIT, BARCODE_Y * USER_UNIT, size, size);
 	}
 
 	private void printEmptyAddressBox(PDDocument document, float yBox, int x, float factor) throws IOException {
@@ -478,15 +517,20 @@ public class PaymentSlipPDF extends DocumentBase {
 		}
 	}
 
+	/**
+	 * Returns the image from the template: each image is added only once to a document
+	 */
 	private PDImageXObject getImageFromResource(PDDocument document, String path, String name) throws IOException {
-		BufferedImage img = ImageIO.read(this.getClass().getResourceAsStream(path));
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ImageIO.write(img, "png", baos);
-		baos.flush();
-		byte[] amountByteArray = baos.toByteArray();
-		baos.close();
-		PDImageXObject amountImage = PDImageXObject.createFromByteArray(document, amountByteArray, name);
-		return amountImage;
+		if (imageDocument != document) {
+			images.clear();
+			imageDocument = document;
+		}
+		PDImageXObject image = images.get(path);
+		if (image == null) {
+			image = PaymentSlipTemplate.createImage(document, path);
+			images.put(path, image);
+		}
+		return image;
 	}
 
 	private void print(String title, String content, float y) throws IOException {
@@ -625,6 +669,25 @@ public class PaymentSlipPDF extends DocumentBase {
 		this.printReceipt = printReceipt;
 	}
 
+	/**
+	 * Returns true if the barcode is drawn as vector graphics instead of an image.
+	 * The default can be defined with the system or environment property 'vectorBarcode'.
+	 *
+	 * @return a boolean
+	 */
+	public boolean isVectorBarcode() {
+		return vectorBarcode;
+	}
+
+	/**
+	 * <p>Setter for the field <code>vectorBarcode</code>.</p>
+	 *
+	 * @param vectorBarcode a boolean
+	 */
+	public void setVectorBarcode(boolean vectorBarcode) {
+		this.vectorBarcode = vectorBarcode;
+	}
+
 	/**
 	 * <p>Getter for the field <code>cutoffLimit</code>.</p>
 	 *
@@ -0,0 +1,317 @@
+package ch.swissqr.paymentslip;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import ch.swissqr.paymentslip.PaymentSlipPDF.Format;
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * The static part of a payment slip for a page format and language: the page
+ * size, the column positions, the fonts, the localized messages and the images.
+ *
+ * <p>
+ * The templates are created once and shared by all slips, so that a new slip
+ * only needs to print the variable fields. The images are decoded and
+ * compressed only once: because PDFBox objects belong to a single document,
+ * the template keeps the compressed image data and each document receives its
+ * own copy of the image XObject.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class PaymentSlipTemplate {
+	private static final Logger LOG = Logger.getLogger(PaymentSlipTemplate.class);
+	private static final float USER_UNIT = 2.83441891578f; // mm to point
+	private static final Map<String, PaymentSlipTemplate> templates = new ConcurrentHashMap();
+	private static final Map<String, ImageData> images = new ConcurrentHashMap();
+	private final Format format;
+	private final String language;
+	private final Properties messages;
+	private final PDRectangle mediaBox;
+	private final PDRectangle cropBox;
+	private final int leftX;
+	private final int rightX;
+	private final boolean supportsLines;
+
+	private PaymentSlipTemplate(Format format, String language) throws IOException {
+		this.format = format;
+		this.language = language;
+		this.messages = StringUtils.loadProperties("language_" + language);
+
+		switch (format) {
+		case A4:
+			mediaBox = PDRectangle.A4;
+			cropBox = new PDRectangle(210f * USER_UNIT, 297f * USER_UNIT);
+			rightX = 120;
+			supportsLines = true;
+			break;
+		case A5:
+			mediaBox = new PDRectangle(210f * USER_UNIT, 148f * USER_UNIT);
+			cropBox = new PDRectangle(210f * USER_UNIT, 148.5f * USER_UNIT);
+			rightX = 120;
+			supportsLines = true;
+			break;
+		case A6:
+			// no cut off lines and no receipt
+			mediaBox = PDRectangle.LETTER;
+			cropBox = new PDRectangle(148.0f * USER_UNIT, 105.0f * USER_UNIT);
+			rightX = 60;
+			supportsLines = false;
+			break;
+		default:
+			mediaBox = PDRectangle.LETTER;
+			cropBox = new PDRectangle(210f * USER_UNIT, 148f * USER_UNIT);
+			rightX = 120;
+			supportsLines = true;
+			break;
+		}
+		leftX = getLeftX(format);
+	}
+
+	/**
+	 * Returns the shared template for the indicated format and language
+	 *
+	 * @param format a {@link ch.swissqr.paymentslip.PaymentSlipPDF.Format} object
+	 * @param language a {@link java.lang.String} object (de, en, fr or it)
+	 * @return a {@link ch.swissqr.paymentslip.PaymentSlipTemplate} object
+	 * @throws java.io.IOException if the messages can not be loaded
+	 */
+	public static PaymentSlipTemplate get(Format format, String language) throws IOException {
+		String key = format + "-" + language;
+		PaymentSlipTemplate result = templates.get(key);
+		if (result == null) {
+			PaymentSlipTemplate template = new PaymentSlipTemplate(format, language);
+			result = templates.putIfAbsent(key, template);
+			if (result == null) {
+				result = template;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new empty page with the size of the format
+	 *
+	 * @return a {@link org.apache.pdfbox.pdmodel.PDPage} object
+	 */
+	public PDPage createPage() {
+		PDPage page = new PDPage(copy(mediaBox));
+		page.setCropBox(copy(cropBox));
+		return page;
+	}
+
+	/**
+	 * Creates the image XObject from the indicated resource for the document.
+	 * The image is decoded only when it is requested for the first time.
+	 *
+	 * @param document a {@link org.apache.pdfbox.pdmodel.PDDocument} object
+	 * @param path resource name of the image
+	 * @return a {@link org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject} object
+	 * @throws java.io.IOException if any.
+	 */
+	public static PDImageXObject createImage(PDDocument document, String path) throws IOException {
+		ImageData data = images.get(path);
+		if (data == null) {
+			data = loadImage(path);
+			images.putIfAbsent(path, data);
+		}
+		return new PDImageXObject(new PDStream(data.create(document)), null);
+	}
+
+	private static ImageData loadImage(String path) throws IOException {
+		LOG.debug("Loading image " + path);
+		InputStream is = PaymentSlipTemplate.class.getResourceAsStream(path);
+		if (is == null) {
+			throw new IOException("Resource not found: " + path);
+		}
+		BufferedImage img;
+		try {
+			img = ImageIO.read(is);
+		} finally {
+			is.close();
+		}
+		PDDocument tmp = new PDDocument();
+		try {
+			return new ImageData(LosslessFactory.createFromImage(tmp, img).getCOSObject());
+		} finally {
+			tmp.close();
+		}
+	}
+
+	private static PDRectangle copy(PDRectangle rect) {
+		return new PDRectangle(rect.getLowerLeftX(), rect.getLowerLeftY(), rect.getWidth(), rect.getHeight());
+	}
+
+	/**
+	 * @return the format
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the language
+	 */
+	public String getLanguage() {
+		return language;
+	}
+
+	/**
+	 * Returns the localized messages. They are shared and must not be changed.
+	 *
+	 * @return a {@link java.util.Properties} object
+	 */
+	public Properties getMessages() {
+		return messages;
+	}
+
+	/**
+	 * @return the x position of the first column of the payment part in mm
+	 */
+	public int getLeftX() {
+		return leftX;
+	}
+
+	/**
+	 * Returns the x position of the first column of the payment part in mm: A6
+	 * pages do not contain the receipt
+	 *
+	 * @param format a {@link ch.swissqr.paymentslip.PaymentSlipPDF.Format} object
+	 * @return a int
+	 */
+	public static int getLeftX(Format format) {
+		return format == Format.A6 ? 5 : 65;
+	}
+
+	/**
+	 * @return the x position of the second column of the payment part in mm
+	 */
+	public int getRightX() {
+		return rightX;
+	}
+
+	/**
+	 * Returns false if the format does not support the cut off lines and the receipt
+	 *
+	 * @return a boolean
+	 */
+	public boolean isSupportsLines() {
+		return supportsLines;
+	}
+
+	/**
+	 * @return the regular font
+	 */
+	public PDFont getFont() {
+		return PDType1Font.HELVETICA;
+	}
+
+	/**
+	 * @return the bold font
+	 */
+	public PDFont getFontBold() {
+		return PDType1Font.HELVETICA_BOLD;
+	}
+
+	/**
+	 * Document independent copy of a compressed image stream: the dictionary
+	 * entries and the encoded data are copied into a new stream of the target
+	 * document without decoding the image again.
+	 */
+	private static final class ImageData {
+		private final byte[] data;
+		private final COSDictionary parameters = new COSDictionary();
+		private final Map<COSName, ImageData> streams = new ConcurrentHashMap();
+
+		ImageData(COSStream stream) throws IOException {
+			InputStream in = stream.createRawInputStream();
+			try {
+				data = IOUtils.toByteArray(in);
+			} finally {
+				in.close();
+			}
+			for (Entry<COSName, COSBase> entry : stream.entrySet()) {
+				COSBase value = dereference(entry.getValue());
+				if (value instanceof COSStream) {
+					// e.g. the soft mask of images with transparency
+					streams.put(entry.getKey(), new ImageData((COSStream) value));
+				} else if (!COSName.LENGTH.equals(entry.getKey())) {
+					parameters.setItem(entry.getKey(), copy(value));
+				}
+			}
+		}
+
+		COSStream create(PDDocument document) throws IOException {
+			COSStream result = document.getDocument().createCOSStream();
+			for (Entry<COSName, COSBase> entry : parameters.entrySet()) {
+				result.setItem(entry.getKey(), copy(entry.getValue()));
+			}
+			for (Entry<COSName, ImageData> entry : streams.entrySet()) {
+				result.setItem(entry.getKey(), entry.getValue().create(document));
+			}
+			OutputStream out = result.createRawOutputStream();
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+			return result;
+		}
+
+		private static COSBase dereference(COSBase value) {
+			return value instanceof COSObject ? ((COSObject) value).getObject() : value;
+		}
+
+		/**
+		 * Copies the mutable containers: the other COS objects are immutable
+		 */
+		private static COSBase copy(COSBase value) throws IOException {
+			value = dereference(value);
+			if (value instanceof COSStream) {
+				throw new IOException("Nested streams are not supported in image parameters");
+			}
+			if (value instanceof COSDictionary) {
+				COSDictionary result = new COSDictionary();
+				for (Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+					result.setItem(entry.getKey(), copy(entry.getValue()));
+				}
+				return result;
+			}
+			if (value instanceof COSArray) {
+				COSArray result = new COSArray();
+				for (COSBase item : (COSArray) value) {
+					result.add(copy(item));
+				}
+				return result;
+			}
+			return value;
+		}
+	}
+
+}
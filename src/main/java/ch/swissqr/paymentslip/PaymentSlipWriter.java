@@ -0,0 +1,406 @@
+package ch.swissqr.paymentslip;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdfwriter.COSStandardOutputStream;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import ch.swissqr.content.ContentBarcodeCH;
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.paymentslip.PaymentSlipPDF.Format;
+
+/**
+ * Writes any number of payment slips as pages of one PDF document e.g. for
+ * the mass mailings of a print shop.
+ *
+ * <p>
+ * Each slip is printed on a new page and the page is written to the output
+ * stream immediately, so only the current page is kept in memory. The fonts
+ * and the images of the {@link PaymentSlipTemplate} are written only once and
+ * are referenced by all pages. The page tree, the catalog and the cross
+ * reference table are written when the writer is closed. If the generation
+ * fails the writer must be aborted instead, so that the client does not receive
+ * a valid document which is missing pages.
+ * </p>
+ *
+ * <p>
+ * By default the barcodes are drawn as vector graphics, so that the pages do
+ * not contain any images except the shared ones of the template.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class PaymentSlipWriter implements Closeable {
+	private static final Logger LOG = Logger.getLogger(PaymentSlipWriter.class);
+	private static final int PAGES_PER_DOCUMENT = 1000;
+	private static final long PAGES_OBJECT = 1;
+	private final COSStandardOutputStream out;
+	private final Map<COSBase, Long> objectNumbers = new IdentityHashMap();
+	private final List<COSBase> pending = new ArrayList();
+	private final List<COSBase> pageObjects = new ArrayList();
+	private long[] offsets = new long[1024];
+	private long[] pages = new long[1024];
+	private long objectCount = PAGES_OBJECT;
+	private int pageCount;
+	private PDDocument document;
+	private PaymentSlipPDF slip;
+	private boolean vectorBarcode = true;
+	private boolean closed;
+
+	/**
+	 * Starts a new PDF document on the output stream
+	 *
+	 * @param os a {@link java.io.OutputStream} object
+	 * @throws java.io.IOException if any.
+	 */
+	public PaymentSlipWriter(OutputStream os) throws IOException {
+		out = new COSStandardOutputStream(new BufferedOutputStream(os, 64 * 1024));
+		write("%PDF-1.4");
+		out.writeEOL();
+		// binary comment, so that the file is handled as binary file
+		out.write(new byte[] { '%', (byte) 0xF6, (byte) 0xE4, (byte) 0xFC, (byte) 0xDF });
+		out.writeEOL();
+	}
+
+	/**
+	 * Prints the payment slip on a new page and writes the page to the output
+	 * stream
+	 *
+	 * @param content a {@link ch.swissqr.content.ContentBarcodeCH} object
+	 * @param language a {@link java.lang.String} object
+	 * @param format a {@link ch.swissqr.paymentslip.PaymentSlipPDF.Format} object
+	 * @param printLines a boolean
+	 * @param printReceipt a boolean
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public void add(ContentBarcodeCH content, String language, Format format, boolean printLines, boolean printReceipt)
+			throws BarcodeException, IOException {
+		if (closed) {
+			throw new IOException("The writer is closed");
+		}
+		if (document == null || pageCount % PAGES_PER_DOCUMENT == 0) {
+			newDocument();
+		}
+		PDPage page = slip.addPage(content, language, format, printLines, printReceipt);
+		writePage(page);
+		document.getPages().remove(page);
+	}
+
+	/**
+	 * The pages are printed into a scratch document which is replaced from time
+	 * to time, so that it does not grow with the number of pages
+	 */
+	private void newDocument() throws BarcodeException, IOException {
+		if (document != null) {
+			// the shared images belong to the old document
+			Iterator<COSBase> it = objectNumbers.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next() instanceof COSStream) {
+					it.remove();
+				}
+			}
+			document.close();
+		}
+		document = new PDDocument();
+		slip = new PaymentSlipPDF(document);
+		slip.setVectorBarcode(vectorBarcode);
+	}
+
+	/**
+	 * Writes the page with all objects which have not been written yet. The
+	 * objects which are only used by this page are released.
+	 */
+	private void writePage(PDPage page) throws IOException {
+		long pageNumber = reference(page.getCOSObject());
+		while (!pending.isEmpty()) {
+			COSBase obj = pending.remove(pending.size() - 1);
+			writeObject(objectNumbers.get(obj), obj, obj == page.getCOSObject());
+		}
+
+		if (pageCount == pages.length) {
+			pages = Arrays.copyOf(pages, pages.length * 2);
+		}
+		pages[pageCount++] = pageNumber;
+
+		for (COSBase obj : pageObjects) {
+			if (obj instanceof COSStream) {
+				if (!slip.isSharedImage(obj)) {
+					objectNumbers.remove(obj);
+					((COSStream) obj).close();
+				}
+			} else if (!isShared(obj)) {
+				objectNumbers.remove(obj);
+			}
+		}
+		pageObjects.clear();
+		out.flush();
+	}
+
+	/**
+	 * Writes the page tree, the catalog and the cross reference table. The
+	 * output stream is flushed but not closed.
+	 *
+	 * @throws java.io.IOException if any.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			setOffset(PAGES_OBJECT);
+			write(PAGES_OBJECT + " 0 obj");
+			out.writeEOL();
+			write("<< /Type /Pages /Kids [");
+			for (int j = 0; j < pageCount; j++) {
+				write(" " + pages[j] + " 0 R");
+				if (j % 10 == 9) {
+					out.writeEOL();
+				}
+			}
+			write(" ] /Count " + pageCount + " >>");
+			out.writeEOL();
+			write("endobj");
+			out.writeEOL();
+
+			long catalog = ++objectCount;
+			setOffset(catalog);
+			write(catalog + " 0 obj");
+			out.writeEOL();
+			write("<< /Type /Catalog /Pages " + PAGES_OBJECT + " 0 R >>");
+			out.writeEOL();
+			write("endobj");
+			out.writeEOL();
+
+			long xref = out.getPos();
+			write("xref");
+			out.writeEOL();
+			write("0 " + (objectCount + 1));
+			out.writeEOL();
+			write("0000000000 65535 f\r\n");
+			for (int j = 1; j <= objectCount; j++) {
+				write(String.format("%010d 00000 n\r\n", offsets[j]));
+			}
+			write("trailer");
+			out.writeEOL();
+			write("<< /Size " + (objectCount + 1) + " /Root " + catalog + " 0 R >>");
+			out.writeEOL();
+			write("startxref");
+			out.writeEOL();
+			write(String.valueOf(xref));
+			out.writeEOL();
+			write("%%EOF");
+			out.writeEOL();
+			out.flush();
+			LOG.debug("Payment slips written: " + pageCount);
+		} finally {
+			if (document != null) {
+				document.close();
+			}
+		}
+	}
+
+	/**
+	 * Stops the writing after an error: the page tree and the cross reference
+	 * table are not written, so the output is not a valid PDF document. The
+	 * output which has not been flushed yet (e.g. the header if no page has been
+	 * written) is discarded.
+	 *
+	 * @throws java.io.IOException if any.
+	 */
+	public void abort() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LOG.debug("Payment slips aborted after " + pageCount + " pages");
+		if (document != null) {
+			document.close();
+		}
+	}
+
+	private void writeObject(long number, COSBase obj, boolean isPage) throws IOException {
+		setOffset(number);
+		write(number + " 0 obj");
+		out.writeEOL();
+		if (obj instanceof COSStream) {
+			COSStream stream = (COSStream) obj;
+			byte[] data;
+			InputStream in = stream.createRawInputStream();
+			try {
+				data = IOUtils.toByteArray(in);
+			} finally {
+				in.close();
+			}
+			write("<<");
+			for (Entry<COSName, COSBase> entry : stream.entrySet()) {
+				if (!COSName.LENGTH.equals(entry.getKey())) {
+					writeEntry(entry.getKey(), entry.getValue());
+				}
+			}
+			write(" /Length " + data.length + " >>");
+			out.writeEOL();
+			write("stream");
+			out.writeCRLF();
+			out.write(data);
+			out.writeCRLF();
+			write("endstream");
+		} else if (obj instanceof COSDictionary) {
+			write("<<");
+			for (Entry<COSName, COSBase> entry : ((COSDictionary) obj).entrySet()) {
+				if (isPage && COSName.PARENT.equals(entry.getKey())) {
+					write(" /Parent " + PAGES_OBJECT + " 0 R");
+				} else {
+					writeEntry(entry.getKey(), entry.getValue());
+				}
+			}
+			write(" >>");
+		} else {
+			writeValue(obj);
+		}
+		out.writeEOL();
+		write("endobj");
+		out.writeEOL();
+	}
+
+	private void writeEntry(COSName key, COSBase value) throws IOException {
+		write(" ");
+		key.writePDF(out);
+		write(" ");
+		writeValue(value);
+	}
+
+	/**
+	 * Writes a direct object or the reference to an indirect object
+	 */
+	private void writeValue(COSBase value) throws IOException {
+		boolean indirect = value instanceof COSObject;
+		if (indirect) {
+			value = ((COSObject) value).getObject();
+		}
+		if (value == null || value instanceof COSNull) {
+			COSNull.NULL.writePDF(out);
+		} else if (indirect || value instanceof COSStream || isShared(value)) {
+			write(reference(value) + " 0 R");
+		} else if (value instanceof COSDictionary) {
+			write("<<");
+			for (Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+				writeEntry(entry.getKey(), entry.getValue());
+			}
+			write(" >>");
+		} else if (value instanceof COSArray) {
+			write("[");
+			for (COSBase item : (COSArray) value) {
+				write(" ");
+				writeValue(item);
+			}
+			write(" ]");
+		} else if (value instanceof COSName) {
+			((COSName) value).writePDF(out);
+		} else if (value instanceof COSInteger) {
+			((COSInteger) value).writePDF(out);
+		} else if (value instanceof COSFloat) {
+			((COSFloat) value).writePDF(out);
+		} else if (value instanceof COSBoolean) {
+			((COSBoolean) value).writePDF(out);
+		} else if (value instanceof COSString) {
+			COSWriter.writeString((COSString) value, out);
+		} else {
+			throw new IOException("Unsupported PDF object: " + value);
+		}
+	}
+
+	/**
+	 * Fonts are written as separate objects, so that they can be shared by
+	 * all pages
+	 */
+	private boolean isShared(COSBase value) {
+		return value instanceof COSDictionary && COSName.FONT.equals(((COSDictionary) value).getCOSName(COSName.TYPE));
+	}
+
+	/**
+	 * Returns the object number: new objects are scheduled for writing
+	 */
+	private long reference(COSBase obj) {
+		Long number = objectNumbers.get(obj);
+		if (number == null) {
+			number = ++objectCount;
+			objectNumbers.put(obj, number);
+			pending.add(obj);
+			pageObjects.add(obj);
+		}
+		return number;
+	}
+
+	private void setOffset(long number) {
+		if (number >= offsets.length) {
+			offsets = Arrays.copyOf(offsets, (int) Math.max(number + 1, offsets.length * 2L));
+		}
+		offsets[(int) number] = out.getPos();
+	}
+
+	private void write(String str) throws IOException {
+		out.write(str.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Returns the number of pages which have been written
+	 *
+	 * @return a int
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * Returns true if the barcodes are drawn as vector graphics
+	 *
+	 * @return a boolean
+	 */
+	public boolean isVectorBarcode() {
+		return vectorBarcode;
+	}
+
+	/**
+	 * Defines if the barcodes are drawn as vector graphics (default) or as
+	 * images
+	 *
+	 * @param vectorBarcode a boolean
+	 */
+	public void setVectorBarcode(boolean vectorBarcode) {
+		this.vectorBarcode = vectorBarcode;
+		if (slip != null) {
+			slip.setVectorBarcode(vectorBarcode);
+		}
+	}
+
+}
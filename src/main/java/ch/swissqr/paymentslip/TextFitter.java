@@ -0,0 +1,198 @@
+package ch.swissqr.paymentslip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.log4j.Logger;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Fits text into a column: determines how many characters of a string fit
+ * into a width and splits text into lines.
+ *
+ * <p>
+ * The width of each character is determined only once per font and stored in
+ * a table, so that the width of a string is the sum of the table entries. The
+ * fitting stops at the first character which does not fit any more.
+ * </p>
+ *
+ * <p>
+ * The widths are measured in glyph space units (1/1000 of the font size) like
+ * {@link PDFont#getStringWidth(String)}.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class TextFitter {
+	private static final Logger LOG = Logger.getLogger(TextFitter.class);
+	private static final Map<PDFont, TextFitter> fitters = new ConcurrentHashMap();
+	private static final int PAGE_SIZE = 256;
+	private final PDFont font;
+	// the table is split into pages which are created when they are needed
+	private final AtomicReferenceArray<float[]> widths = new AtomicReferenceArray(65536 / PAGE_SIZE);
+
+	private TextFitter(PDFont font) {
+		this.font = font;
+	}
+
+	/**
+	 * Returns the shared fitter for the indicated font
+	 *
+	 * @param font a {@link org.apache.pdfbox.pdmodel.font.PDFont} object
+	 * @return a {@link ch.swissqr.paymentslip.TextFitter} object
+	 */
+	public static TextFitter get(PDFont font) {
+		TextFitter result = fitters.get(font);
+		if (result == null) {
+			TextFitter fitter = new TextFitter(font);
+			result = fitters.putIfAbsent(font, fitter);
+			if (result == null) {
+				result = fitter;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the width of the character
+	 *
+	 * @param ch a char
+	 * @return the width in glyph space units
+	 * @throws java.lang.IllegalArgumentException if the font does not support the character
+	 */
+	public float getWidth(char ch) {
+		float[] page = widths.get(ch / PAGE_SIZE);
+		if (page == null) {
+			page = createPage(ch / PAGE_SIZE);
+			widths.set(ch / PAGE_SIZE, page);
+		}
+		float result = page[ch % PAGE_SIZE];
+		if (Float.isNaN(result)) {
+			// reports the unsupported character
+			result = getStringWidth(String.valueOf(ch));
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the widths of all characters of the page. Unsupported
+	 * characters are marked with NaN.
+	 */
+	private float[] createPage(int pageNo) {
+		float[] page = new float[PAGE_SIZE];
+		for (int j = 0; j < PAGE_SIZE; j++) {
+			try {
+				page[j] = getStringWidth(String.valueOf((char) (pageNo * PAGE_SIZE + j)));
+			} catch (IllegalArgumentException ex) {
+				page[j] = Float.NaN;
+			}
+		}
+		return page;
+	}
+
+	private float getStringWidth(String str) {
+		try {
+			return font.getStringWidth(str);
+		} catch (IOException ex) {
+			LOG.error(ex, ex);
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the width of the string
+	 *
+	 * @param str a {@link java.lang.CharSequence} object
+	 * @return the width in glyph space units
+	 */
+	public float getWidth(CharSequence str) {
+		float result = 0;
+		for (int j = 0; j < str.length(); j++) {
+			result += getWidth(str.charAt(j));
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the number of characters at the start of the string which fit
+	 * into the width
+	 *
+	 * @param str a {@link java.lang.CharSequence} object
+	 * @param from index of the first character
+	 * @param maxWidth width in glyph space units
+	 * @return the number of characters
+	 */
+	public int fit(CharSequence str, int from, double maxWidth) {
+		float width = 0;
+		for (int j = from; j < str.length(); j++) {
+			width += getWidth(str.charAt(j));
+			if (width > maxWidth) {
+				return j - from;
+			}
+		}
+		return str.length() - from;
+	}
+
+	/**
+	 * Cuts off the characters at the end of the string which do not fit into
+	 * the width
+	 *
+	 * @param str a {@link java.lang.String} object
+	 * @param maxWidth width in glyph space units
+	 * @return a {@link java.lang.String} object
+	 */
+	public String limit(String str, double maxWidth) {
+		int len = fit(str, 0, maxWidth);
+		return len == str.length() ? str : str.substring(0, len);
+	}
+
+	/**
+	 * Splits the text into lines which fit into the width. The lines are split
+	 * at the last space which fits and words which are longer than the width
+	 * are split at the width. The lines are trimmed.
+	 *
+	 * @param str a {@link java.lang.String} object
+	 * @param maxWidth width in glyph space units
+	 * @return a {@link java.util.List} object
+	 */
+	public List<String> split(String str, double maxWidth) {
+		List<String> result = new ArrayList();
+		int start = 0;
+		while (start < str.length()) {
+			int end = start + fit(str, start, maxWidth);
+			if (end < str.length() && str.charAt(end) != ' ') {
+				int lastSpace = str.lastIndexOf(' ', end - 1);
+				if (lastSpace >= start) {
+					end = lastSpace;
+				}
+			}
+			// at least one character per line
+			end = Math.max(end, start + 1);
+			result.add(str.substring(start, end).trim());
+			start = skipSpaces(str, end);
+		}
+		return result;
+	}
+
+	/**
+	 * Skips the characters which are removed by {@link String#trim()}
+	 */
+	private static int skipSpaces(String str, int pos) {
+		while (pos < str.length() && str.charAt(pos) <= ' ') {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return the font
+	 */
+	public PDFont getFont() {
+		return font;
+	}
+
+}
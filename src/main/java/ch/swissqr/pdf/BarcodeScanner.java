@@ -0,0 +1,316 @@
+package ch.swissqr.pdf;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.util.Matrix;
+
+import ch.swissqr.barcode.QRBarcode;
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.StringUtils;
+import ch.swissqr.utils.WorkerPool;
+
+/**
+ * Finds all QR barcodes of a PDF document and reports them with their page and
+ * position.
+ *
+ * <p>
+ * The pages are analyzed one after the other: the content streams (including
+ * the nested form XObjects) are processed to determine where images are drawn
+ * and where a QR code is drawn as vector graphics, i.e. as a large number of
+ * filled rectangles in a square area. The vector areas are rendered into an
+ * image.
+ * </p>
+ *
+ * <p>
+ * PDFBox documents can not be accessed by multiple threads, so only the
+ * decoding of the images is done by the {@link WorkerPool} while the next
+ * pages are analyzed. Images which are drawn multiple times are decoded only
+ * once.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class BarcodeScanner {
+	private static final Logger LOG = Logger.getLogger(BarcodeScanner.class);
+	// a QR code has at least 21 modules
+	private static final int MIN_IMAGE_SIZE = 21;
+	private static final int MIN_RECTANGLES = 50;
+	private static final float MIN_VECTOR_SIZE = 28; // 10 mm
+	private static final float SCAN_DPI = 200;
+	private final DocumentBase document;
+
+	/**
+	 * Defines the document which is scanned
+	 *
+	 * @param document a {@link ch.swissqr.pdf.DocumentBase} object
+	 */
+	public BarcodeScanner(DocumentBase document) {
+		this.document = document;
+	}
+
+	/**
+	 * Determines all QR barcodes in the page order
+	 *
+	 * @return a {@link java.util.List} object
+	 * @throws java.io.IOException if any.
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 */
+	public List<PageBarcode> scan() throws IOException, BarcodeException {
+		List<PageBarcode> result = new ArrayList();
+		WorkerPool.process(() -> new CandidateIterator(), (candidate, index) -> candidate.decode(), barcode -> {
+			if (barcode != null) {
+				result.add(barcode);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Image with the area on the page which might contain a QR code
+	 */
+	private static final class Candidate {
+		private final int page;
+		private final PDRectangle area;
+		private final Decoding decoding;
+		private final boolean vector;
+
+		Candidate(int page, PDRectangle area, Decoding decoding, boolean vector) {
+			this.page = page;
+			this.area = area;
+			this.decoding = decoding;
+			this.vector = vector;
+		}
+
+		PageBarcode decode() {
+			String content = decoding.getContent();
+			return StringUtils.isEmpty(content) ? null : new PageBarcode(page, area, content, vector);
+		}
+	}
+
+	/**
+	 * Decodes an image only once, even if it is used by multiple candidates
+	 */
+	private static final class Decoding {
+		private BufferedImage image;
+		private String content;
+
+		Decoding(BufferedImage image) {
+			this.image = image;
+		}
+
+		synchronized String getContent() {
+			if (image != null) {
+				try {
+					content = new QRBarcode().readImage(image);
+				} catch (IOException | BarcodeException ex) {
+					LOG.debug("No QR code: " + ex.getMessage());
+				}
+				image = null;
+			}
+			return content;
+		}
+	}
+
+	/**
+	 * Analyzes the pages on demand and provides their candidates
+	 */
+	private class CandidateIterator implements Iterator<Candidate> {
+		private final Deque<Candidate> candidates = new ArrayDeque();
+		private final Map<COSBase, Decoding> decodings = new IdentityHashMap();
+		private final int pages = document.getDocument().getNumberOfPages();
+		private int page;
+
+		@Override
+		public boolean hasNext() {
+			while (candidates.isEmpty() && page < pages) {
+				try {
+					analyze(page++);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			return !candidates.isEmpty();
+		}
+
+		@Override
+		public Candidate next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return candidates.removeFirst();
+		}
+
+		private void analyze(int pageIndex) throws IOException {
+			PDPage pdPage = document.getDocument().getPage(pageIndex);
+			PageAnalyzer analyzer = new PageAnalyzer(pdPage);
+			analyzer.processPage(pdPage);
+
+			for (int j = 0; j < analyzer.images.size(); j++) {
+				PDImage image = analyzer.images.get(j);
+				if (image.getWidth() < MIN_IMAGE_SIZE || image.getHeight() < MIN_IMAGE_SIZE) {
+					continue;
+				}
+				COSBase key = image.getCOSObject();
+				Decoding decoding = decodings.get(key);
+				if (decoding == null) {
+					try {
+						decoding = new Decoding(image.getImage());
+					} catch (IOException ex) {
+						LOG.warn("The image on page " + pageIndex + " can not be read: " + ex.getMessage());
+						continue;
+					}
+					decodings.put(key, decoding);
+				}
+				candidates.add(new Candidate(pageIndex, analyzer.imageAreas.get(j), decoding, false));
+			}
+
+			for (PDRectangle area : analyzer.vectorAreas) {
+				// include the quiet zone
+				float margin = area.getWidth() * 0.1f;
+				PDRectangle region = new PDRectangle(area.getLowerLeftX() - margin, area.getLowerLeftY() - margin,
+						area.getWidth() + 2 * margin, area.getHeight() + 2 * margin);
+				RasterOptions options = new RasterOptions().page(pageIndex).region(region).dpi(SCAN_DPI)
+						.imageType(ImageType.GRAY);
+				candidates.add(new Candidate(pageIndex, area, new Decoding(document.renderImage(options)), true));
+			}
+		}
+	}
+
+	/**
+	 * Collects the drawn images and the areas which are filled with many
+	 * rectangles. All coordinates are transformed into the page coordinates.
+	 */
+	private static final class PageAnalyzer extends PDFGraphicsStreamEngine {
+		private final List<PDImage> images = new ArrayList();
+		private final List<PDRectangle> imageAreas = new ArrayList();
+		private final List<PDRectangle> vectorAreas = new ArrayList();
+		private final Point2D.Float current = new Point2D.Float();
+		private int rectangles;
+		private float minX, minY, maxX, maxY;
+
+		PageAnalyzer(PDPage page) {
+			super(page);
+			resetPath();
+		}
+
+		@Override
+		public void drawImage(PDImage image) throws IOException {
+			Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+			float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+			for (int corner = 0; corner < 4; corner++) {
+				Point2D.Float p = ctm.transformPoint(corner % 2, corner / 2);
+				x0 = Math.min(x0, p.x);
+				y0 = Math.min(y0, p.y);
+				x1 = Math.max(x1, p.x);
+				y1 = Math.max(y1, p.y);
+			}
+			images.add(image);
+			imageAreas.add(new PDRectangle(x0, y0, x1 - x0, y1 - y0));
+		}
+
+		@Override
+		public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+			rectangles++;
+			for (Point2D p : new Point2D[] { p0, p1, p2, p3 }) {
+				minX = Math.min(minX, (float) p.getX());
+				minY = Math.min(minY, (float) p.getY());
+				maxX = Math.max(maxX, (float) p.getX());
+				maxY = Math.max(maxY, (float) p.getY());
+			}
+			current.setLocation(p0);
+		}
+
+		@Override
+		public void fillPath(int windingRule) throws IOException {
+			checkModules();
+			resetPath();
+		}
+
+		@Override
+		public void fillAndStrokePath(int windingRule) throws IOException {
+			checkModules();
+			resetPath();
+		}
+
+		/**
+		 * A QR code consists of many rectangles in a square area
+		 */
+		private void checkModules() {
+			float width = maxX - minX;
+			float height = maxY - minY;
+			if (rectangles >= MIN_RECTANGLES && width >= MIN_VECTOR_SIZE && Math.abs(width - height) <= width * 0.1f) {
+				vectorAreas.add(new PDRectangle(minX, minY, width, height));
+			}
+		}
+
+		private void resetPath() {
+			rectangles = 0;
+			minX = Float.MAX_VALUE;
+			minY = Float.MAX_VALUE;
+			maxX = -Float.MAX_VALUE;
+			maxY = -Float.MAX_VALUE;
+		}
+
+		@Override
+		public void strokePath() throws IOException {
+			resetPath();
+		}
+
+		@Override
+		public void endPath() throws IOException {
+			resetPath();
+		}
+
+		@Override
+		public void clip(int windingRule) throws IOException {
+		}
+
+		@Override
+		public void moveTo(float x, float y) throws IOException {
+			current.setLocation(x, y);
+		}
+
+		@Override
+		public void lineTo(float x, float y) throws IOException {
+			current.setLocation(x, y);
+		}
+
+		@Override
+		public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+			current.setLocation(x3, y3);
+		}
+
+		@Override
+		public Point2D getCurrentPoint() throws IOException {
+			return current;
+		}
+
+		@Override
+		public void closePath() throws IOException {
+		}
+
+		@Override
+		public void shadingFill(COSName shadingName) throws IOException {
+		}
+	}
+
+}
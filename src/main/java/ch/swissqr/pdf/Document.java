@@ -10,6 +10,7 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
 
 import ch.swissqr.content.ContentBarcodeCH;
+import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.paymentslip.PaymentSlipPDF;
 import ch.swissqr.paymentslip.PaymentSlipPDF.Format;
 import ch.swissqr.pdf.parsing.PDFContent;
@@ -22,6 +23,7 @@ import ch.swissqr.pdf.parsing.Text;
  * @author pschatzmann
  */
 public class Document extends DocumentBase {
+	private PaymentSlipPDF slip;
 
 	/**
 	 * <p>Constructor for Document.</p>
@@ -53,14 +55,41 @@ public class Document extends DocumentBase {
 	}
 
 	/**
-	 * Adds a payment slit at the end of the document
+	 * Adds a payment slit at the end of the document. The slip is printed
+	 * directly on a new page of this document.
 	 *
 	 * @throws java.lang.Exception
 	 * @param content a {@link ch.swissqr.content.ContentBarcodeCH} object
 	 * @param language a {@link java.lang.String} object
 	 */
 	public void addPaymentSlip(ContentBarcodeCH content, String language) throws Exception {
-		this.addPDF(new PaymentSlipPDF(content, language, PaymentSlipPDF.Format.A4, true,true).getDocument());
+		getSlip().addPage(content, language, PaymentSlipPDF.Format.A4, true, true);
+	}
+
+	/**
+	 * Adds the payment slips at the end of the document. The fonts and images
+	 * which are used by the slips are stored only once in the document.
+	 *
+	 * @throws java.lang.Exception
+	 * @param contents a {@link java.lang.Iterable} object
+	 * @param language a {@link java.lang.String} object
+	 */
+	public void addPaymentSlips(Iterable<ContentBarcodeCH> contents, String language) throws Exception {
+		PaymentSlipPDF slip = getSlip();
+		for (ContentBarcodeCH content : contents) {
+			slip.addPage(content, language, PaymentSlipPDF.Format.A4, true, true);
+		}
+	}
+
+	/**
+	 * The slip prints into this document: it is reused, so that the images are
+	 * only added once
+	 */
+	private PaymentSlipPDF getSlip() throws BarcodeException {
+		if (slip == null || slip.getDocument() != getDocument()) {
+			slip = new PaymentSlipPDF(getDocument());
+		}
+		return slip;
 	}
 
 }
@@ -1,8 +1,10 @@
 package ch.swissqr.pdf;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,6 +12,7 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 
 import javax.imageio.ImageIO;
 
@@ -19,12 +22,12 @@ import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
-import ch.swissqr.barcode.QRBarcode;
 import ch.swissqr.content.AllBarcodeTypes;
 import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.IContent;
@@ -40,7 +43,11 @@ import ch.swissqr.utils.StringUtils;
  */
 public class DocumentBase {
 	private static final Logger LOG = Logger.getLogger(DocumentBase.class);
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Semaphore renderPermits = new Semaphore(Integer.valueOf(
+			StringUtils.getProperty("renderThreads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
 	private PDDocument document;
+	private PDFRenderer renderer;
 	private List<String> errors = new ArrayList();
 
 	/**
@@ -96,6 +103,7 @@ public class DocumentBase {
 			}
 		}
 		this.document = doc;
+		this.renderer = null;
 	}
 
 
@@ -106,23 +114,30 @@ public class DocumentBase {
 	 * @return a {@link java.util.List} object
 	 */
 	public List<String> getBarcodeStrings() throws IOException {
-		errors.clear();
 		List<String> result = new ArrayList();
-		QRBarcode bc = new QRBarcode();
-		for (PDImage img : getImages()) {
-			BufferedImage bi = img.getImage();
-			try {
-				String s = bc.readImage(bi);
-				if (!StringUtils.isEmpty(s)) {
-					result.add(s);
-				}
-			} catch (Exception ex) {
-				LOG.error(ex,ex);
-				//errors.add(ex.getMessage());
+		try {
+			for (PageBarcode barcode : getBarcodes()) {
+				result.add(barcode.getContent());
 			}
+		} catch (BarcodeException ex) {
+			throw new IOException(ex);
 		}
 		return result;
 	}
+
+	/**
+	 * Determines all QR barcodes with their page and position. The images are
+	 * decoded in parallel and barcodes which are drawn as vector graphics are
+	 * decoded from the rendered area.
+	 *
+	 * @throws java.io.IOException
+	 * @throws ch.swissqr.errors.BarcodeException
+	 * @return a {@link java.util.List} object
+	 */
+	public List<PageBarcode> getBarcodes() throws IOException, BarcodeException {
+		errors.clear();
+		return new BarcodeScanner(this).scan();
+	}
 	
 	/**
 	 * <p>Getter for the field <code>errors</code>.</p>
@@ -203,26 +218,104 @@ public class DocumentBase {
 	}
 
 	/**
-	 * Saves the current PDF document to a output stream
+	 * Saves the current PDF document to a output stream. The output stream is
+	 * not closed, so that the document can be written e.g. into a zip entry.
 	 *
 	 * @throws java.io.IOException
 	 * @param os a {@link java.io.OutputStream} object
 	 */
 	public void write(OutputStream os) throws IOException {
-		document.save(os);
+		// PDDocument.save closes the stream and writes it in small pieces
+		OutputStream out = new BufferedOutputStream(new FilterOutputStream(os) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				this.out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		}, BUFFER_SIZE);
+		document.save(out);
 	}
 
 	/**
-	 * Writes the image to the indicated output stream
+	 * Writes the pdf document or the image of the first page to the indicated
+	 * output stream. The output stream is not closed.
 	 *
 	 * @throws java.io.IOException
 	 * @param outputStream a {@link java.io.OutputStream} object
-	 * @param format a {@link java.lang.String} object
+	 * @param format a {@link java.lang.String} object: pdf or a picture format
 	 */
 	public void write(OutputStream outputStream, String format) throws IOException {
-		PDFRenderer pdfRenderer = new PDFRenderer(this.getDocument());
-		BufferedImage bi = pdfRenderer.renderImage(0, 10.0f);
-		ImageIO.write(bi, format, outputStream);
+		write(outputStream, format, new RasterOptions());
+	}
+
+	/**
+	 * Writes the pdf document or the image of the page which is defined by the
+	 * raster options to the indicated output stream. The output stream is not
+	 * closed.
+	 *
+	 * @throws java.io.IOException
+	 * @param outputStream a {@link java.io.OutputStream} object
+	 * @param format a {@link java.lang.String} object: pdf or a picture format
+	 * @param options a {@link ch.swissqr.pdf.RasterOptions} object
+	 */
+	public void write(OutputStream outputStream, String format, RasterOptions options) throws IOException {
+		if (isPDF(format)) {
+			write(outputStream);
+		} else {
+			BufferedImage bi = renderImage(options);
+			if (!ImageIO.write(bi, format, outputStream)) {
+				LOG.warn("Unsupported picture format: " + format);
+			}
+		}
+	}
+
+	/**
+	 * Renders a page into an image. At most 'renderThreads' pages are rendered
+	 * at the same time, so that the memory which is needed for the images
+	 * stays bounded. The renderer is reused for all pages of the document.
+	 *
+	 * @throws java.io.IOException
+	 * @param options a {@link ch.swissqr.pdf.RasterOptions} object
+	 * @return a {@link java.awt.image.BufferedImage} object
+	 */
+	public BufferedImage renderImage(RasterOptions options) throws IOException {
+		PDPage page = getDocument().getPage(options.getPage());
+		PDRectangle cropBox = page.getCropBox();
+		try {
+			renderPermits.acquire();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Rendering interrupted", ex);
+		}
+		try {
+			if (options.getRegion() != null) {
+				// only the pixels of the region are rendered
+				page.setCropBox(options.getRegion());
+			}
+			return getRenderer().renderImageWithDPI(options.getPage(), options.getDpi(), options.getImageType());
+		} finally {
+			if (options.getRegion() != null) {
+				page.setCropBox(cropBox);
+			}
+			renderPermits.release();
+		}
+	}
+
+	/**
+	 * Returns the renderer of the document. It caches the fonts and images of
+	 * the document, so it is created only once.
+	 *
+	 * @return a {@link org.apache.pdfbox.rendering.PDFRenderer} object
+	 */
+	protected PDFRenderer getRenderer() {
+		if (renderer == null) {
+			renderer = new PDFRenderer(getDocument());
+		}
+		return renderer;
 	}
 	
 	/**
@@ -233,17 +326,19 @@ public class DocumentBase {
 	 * @return an array of {@link byte} objects
 	 */
 	public byte[] getBytes(String pictureFormat) throws IOException {
-		byte[] result;
-		if (StringUtils.isEmpty(pictureFormat) || pictureFormat.equalsIgnoreCase("pdf")) {
-			ByteArrayOutputStream bo = new ByteArrayOutputStream();
-			write(bo);
-			result = bo.toByteArray();
-		} else {
-			ByteArrayOutputStream bo = new ByteArrayOutputStream();
-			write(bo, pictureFormat);
-			result = bo.toByteArray();
-		}
-		return result;
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		write(bo, pictureFormat);
+		return bo.toByteArray();
+	}
+
+	/**
+	 * Returns true if the format is empty or pdf
+	 *
+	 * @param pictureFormat a {@link java.lang.String} object
+	 * @return a boolean
+	 */
+	public static boolean isPDF(String pictureFormat) {
+		return StringUtils.isEmpty(pictureFormat) || pictureFormat.equalsIgnoreCase("pdf");
 	}
 	
 
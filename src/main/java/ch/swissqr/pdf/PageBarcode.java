@@ -0,0 +1,71 @@
+package ch.swissqr.pdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * QR barcode which has been found in a PDF document together with its
+ * position
+ *
+ * @author pschatzmann
+ */
+public class PageBarcode {
+	private final int page;
+	private final PDRectangle area;
+	private final String content;
+	private final boolean vector;
+
+	/**
+	 * Defines a new barcode
+	 *
+	 * @param page index of the page (starting with 0)
+	 * @param area a {@link org.apache.pdfbox.pdmodel.common.PDRectangle} object
+	 * @param content a {@link java.lang.String} object
+	 * @param vector a boolean
+	 */
+	public PageBarcode(int page, PDRectangle area, String content, boolean vector) {
+		this.page = page;
+		this.area = area;
+		this.content = content;
+		this.vector = vector;
+	}
+
+	/**
+	 * @return the index of the page starting with 0
+	 */
+	public int getPage() {
+		return page;
+	}
+
+	/**
+	 * Returns the area of the barcode on the page in PDF user space units
+	 * (1/72 inch) measured from the lower left corner
+	 *
+	 * @return a {@link org.apache.pdfbox.pdmodel.common.PDRectangle} object
+	 */
+	public PDRectangle getArea() {
+		return area;
+	}
+
+	/**
+	 * @return the decoded content of the barcode
+	 */
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * Returns true if the barcode has been drawn as vector graphics and was
+	 * decoded from the rendered page region
+	 *
+	 * @return a boolean
+	 */
+	public boolean isVector() {
+		return vector;
+	}
+
+	@Override
+	public String toString() {
+		return "page " + page + " " + area + ": " + content;
+	}
+
+}
@@ -0,0 +1,124 @@
+package ch.swissqr.pdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * Defines how a page is rendered into a picture: the resolution, the color
+ * model and the region of the page.
+ *
+ * <p>
+ * The default resolution can be defined with the system or environment
+ * property 'rasterDPI'. It defaults to 300 DPI which is sufficient to print
+ * and scan the QR code.
+ * </p>
+ *
+ * @author pschatzmann
+ */
+public class RasterOptions {
+	/** Highest supported resolution */
+	public static final float MAX_DPI = 720;
+	private static final float DEFAULT_DPI = Float.valueOf(StringUtils.getProperty("rasterDPI", "300"));
+	private float dpi = DEFAULT_DPI;
+	private ImageType imageType = ImageType.RGB;
+	private PDRectangle region;
+	private int page;
+
+	/**
+	 * Defines the resolution in dots per inch
+	 *
+	 * @param dpi a float
+	 * @return a {@link ch.swissqr.pdf.RasterOptions} object
+	 */
+	public RasterOptions dpi(float dpi) {
+		if (dpi <= 0 || dpi > MAX_DPI) {
+			throw new IllegalArgumentException("The resolution must be between 1 and " + MAX_DPI + " DPI: " + dpi);
+		}
+		this.dpi = dpi;
+		return this;
+	}
+
+	/**
+	 * Defines the color model: rgb (default), gray or bitonal (black and white)
+	 *
+	 * @param colors a {@link java.lang.String} object
+	 * @return a {@link ch.swissqr.pdf.RasterOptions} object
+	 */
+	public RasterOptions colors(String colors) {
+		if (StringUtils.isEmpty(colors) || colors.equalsIgnoreCase("rgb") || colors.equalsIgnoreCase("color")) {
+			this.imageType = ImageType.RGB;
+		} else if (colors.equalsIgnoreCase("gray") || colors.equalsIgnoreCase("grey")) {
+			this.imageType = ImageType.GRAY;
+		} else if (colors.equalsIgnoreCase("bitonal") || colors.equalsIgnoreCase("binary")) {
+			this.imageType = ImageType.BINARY;
+		} else {
+			throw new IllegalArgumentException("Unsupported colors: " + colors + " - use rgb, gray or bitonal");
+		}
+		return this;
+	}
+
+	/**
+	 * Defines the color model
+	 *
+	 * @param imageType a {@link org.apache.pdfbox.rendering.ImageType} object
+	 * @return a {@link ch.swissqr.pdf.RasterOptions} object
+	 */
+	public RasterOptions imageType(ImageType imageType) {
+		this.imageType = imageType;
+		return this;
+	}
+
+	/**
+	 * Renders only the indicated region of the page. The rectangle is defined
+	 * in PDF user space units. null renders the whole page.
+	 *
+	 * @param region a {@link org.apache.pdfbox.pdmodel.common.PDRectangle} object
+	 * @return a {@link ch.swissqr.pdf.RasterOptions} object
+	 */
+	public RasterOptions region(PDRectangle region) {
+		this.region = region;
+		return this;
+	}
+
+	/**
+	 * Defines the index of the page which is rendered (default 0)
+	 *
+	 * @param page a int
+	 * @return a {@link ch.swissqr.pdf.RasterOptions} object
+	 */
+	public RasterOptions page(int page) {
+		this.page = page;
+		return this;
+	}
+
+	/**
+	 * @return the resolution in dots per inch
+	 */
+	public float getDpi() {
+		return dpi;
+	}
+
+	/**
+	 * @return the color model
+	 */
+	public ImageType getImageType() {
+		return imageType;
+	}
+
+	/**
+	 * @return the rendered region or null for the whole page
+	 */
+	public PDRectangle getRegion() {
+		return region;
+	}
+
+	/**
+	 * @return the index of the rendered page
+	 */
+	public int getPage() {
+		return page;
+	}
+
+}
@@ -110,6 +110,13 @@ public class BasicService {
 		LOG.info("getBarcode");
 		boolean ok = UsageValidator.check(headers, licenseKey, 1);
 
+		String format = getFormatFromMime();
+		String key = ImageCache.getKey(BasicService.class.getSimpleName(), contentString, format, mm, errorCorrectionLevel, !ok);
+		return ImageCache.getResponse(headers, format, key,
+				() -> getBarcode(contentString, mm, errorCorrectionLevel, ok).create(StringUtils.str(contentString), format));
+	}
+
+	private IBarcode getBarcode(String contentString, double mm, ErrorCorrectionLevel errorCorrectionLevel, boolean ok) {
 		IBarcode barcodeSwiss = new QRSwissBarcode(!ok);
 		IBarcode barcode = new QRBarcode(mm, errorCorrectionLevel);
 		if (!ok) {
@@ -124,7 +131,7 @@ public class BasicService {
 			LOG.warn(ex);
 			bc = barcode;
 		}
-		return Response.ok(bc.createImage(StringUtils.str(contentString), getFormatFromMime())).build();
+		return bc;
 	}
 
 	/**
@@ -0,0 +1,334 @@
+package ch.swissqr.service.web;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.apache.pdfbox.io.IOUtils;
+
+import ch.swissqr.content.IContent;
+import ch.swissqr.content.ch.formats.AnyFormat;
+import ch.swissqr.content.ch.formats.CSVStreamReader;
+import ch.swissqr.content.ch.formats.ContentRecord;
+import ch.swissqr.content.ch.formats.FormatException;
+import ch.swissqr.content.ch.formats.JsonStreamReader;
+import ch.swissqr.content.ch.formats.XmlContentReader;
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.Error;
+
+/**
+ * Request body of the bulk services. Json arrays, xml documents with a
+ * &lt;root&gt; element and CSV content (with a 'contentType' column in the
+ * header) are spooled to a temporary file and the
+ * content objects are read from there one record at a time while the result is
+ * written, so the batch is never held in memory. The file is needed because the
+ * request stream is not available any more when the response is streamed and
+ * because the records must be counted for the usage validation before the
+ * processing starts. All other formats are parsed into a list with
+ * {@link AnyFormat}.
+ *
+ * @author pschatzmann
+ */
+public class BulkInput implements Closeable {
+	private static final Logger LOG = Logger.getLogger(BulkInput.class);
+	private static final int MAX_PREFIX = 64 * 1024;
+	private File file;
+	private SpoolFormat format;
+	private List<IContent> list;
+	private List<Closeable> readers = new ArrayList();
+
+	/**
+	 * Formats which are read from the spooled file
+	 */
+	private enum SpoolFormat {
+		JSON, XML, CSV
+	}
+
+	private BulkInput() {
+	}
+
+	/**
+	 * Reads the request body
+	 *
+	 * @param in a {@link java.io.InputStream} object
+	 * @return a {@link ch.swissqr.service.web.BulkInput} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 * @throws java.io.IOException if any.
+	 * @throws java.text.ParseException if any.
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 */
+	public static BulkInput read(InputStream in) throws FormatException, IOException, ParseException, BarcodeException {
+		BulkInput result = new BulkInput();
+		BufferedInputStream bin = new BufferedInputStream(in);
+		result.format = getSpoolFormat(bin);
+		if (result.format != null) {
+			result.file = File.createTempFile("swissqr-bulk", "." + result.format.name().toLowerCase());
+			try {
+				Files.copy(bin, result.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException ex) {
+				result.close();
+				throw ex;
+			}
+			LOG.debug("Spooled content to " + result.file + " (" + result.file.length() + " bytes)");
+		} else {
+			result.list = AnyFormat.read(new String(IOUtils.toByteArray(bin), StandardCharsets.UTF_8));
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the format from the start of the content: json arrays start
+	 * with '[', xml documents contain a &lt;root&gt; element and CSV content has a
+	 * header line with a 'contentType' column. CSV content with escaped line
+	 * separators is read in memory by the {@link AnyFormat}.
+	 */
+	private static SpoolFormat getSpoolFormat(BufferedInputStream in) throws IOException {
+		in.mark(MAX_PREFIX);
+		try {
+			byte[] prefix = new byte[MAX_PREFIX];
+			int len = 0;
+			for (int n = 0; len < prefix.length; len += n) {
+				n = in.read(prefix, len, prefix.length - len);
+				if (n < 0) {
+					break;
+				}
+			}
+			String str = new String(prefix, 0, len, StandardCharsets.UTF_8).replace("\uFEFF", "").trim();
+			if (str.startsWith("[")) {
+				return SpoolFormat.JSON;
+			}
+			if (str.startsWith("<")) {
+				return str.contains("<root>") ? SpoolFormat.XML : null;
+			}
+			int end = str.indexOf('\n');
+			String header = end < 0 ? str : str.substring(0, end);
+			// lines which are separated by an escaped \n are unescaped by the AnyFormat
+			if (header.contains("\\n")) {
+				return null;
+			}
+			return header.contains(",") && header.contains("contentType") ? SpoolFormat.CSV : null;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Counts the content objects of the indicated class
+	 *
+	 * @param cls a {@link java.lang.Class} object
+	 * @return a int
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public int count(Class<? extends IContent> cls) throws FormatException, IOException {
+		if (list != null) {
+			int result = 0;
+			for (IContent content : list) {
+				if (cls.isInstance(content)) {
+					result++;
+				}
+			}
+			return result;
+		}
+		switch (format) {
+		case CSV:
+			try (CSVStreamReader reader = new CSVStreamReader(openFile())) {
+				return reader.count(cls);
+			}
+		case XML:
+			try (XmlContentReader reader = new XmlContentReader(openFile())) {
+				return reader.count(cls);
+			}
+		default:
+			try (JsonStreamReader reader = new JsonStreamReader(openFile())) {
+				return reader.count(cls);
+			}
+		}
+	}
+
+	/**
+	 * Checks the completeness and correctness of all content objects. CSV
+	 * records are checked in parallel and the errors contain the line number as
+	 * file name.
+	 *
+	 * @return a {@link java.util.List} object
+	 * @throws ch.swissqr.content.ch.formats.FormatException if any.
+	 */
+	public List<Error> check() throws FormatException {
+		if (format == SpoolFormat.CSV) {
+			CSVStreamReader reader = new CSVStreamReader(openFile());
+			try {
+				return reader.stream(true, true).flatMap(record -> record.getErrors().stream())
+						.collect(Collectors.toList());
+			} finally {
+				close(reader);
+			}
+		}
+		List<Error> result = new ArrayList();
+		for (IContent content : get(IContent.class, false)) {
+			result.addAll(content.check());
+		}
+		return result;
+	}
+
+	/**
+	 * Provides the content objects of the indicated class. The objects are read
+	 * lazily when the returned Iterable is consumed.
+	 *
+	 * @param cls a {@link java.lang.Class} object
+	 * @param test value for the test flag of each content object
+	 * @return a {@link java.lang.Iterable} object
+	 */
+	public <T extends IContent> Iterable<T> get(Class<T> cls, boolean test) {
+		return () -> new ContentIterator(cls, test, open());
+	}
+
+	private Iterator<IContent> open() {
+		if (list != null) {
+			return list.iterator();
+		}
+		try {
+			switch (format) {
+			case CSV:
+				CSVStreamReader csvReader = new CSVStreamReader(openFile());
+				register(csvReader);
+				return new CSVContentIterator(csvReader.iterator(false));
+			case XML:
+				XmlContentReader xmlReader = new XmlContentReader(openFile());
+				register(xmlReader);
+				return xmlReader;
+			default:
+				JsonStreamReader jsonReader = new JsonStreamReader(openFile());
+				register(jsonReader);
+				return jsonReader;
+			}
+		} catch (FormatException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private InputStream openFile() throws FormatException {
+		try {
+			return new FileInputStream(file);
+		} catch (IOException ex) {
+			throw new FormatException(ex);
+		}
+	}
+
+	private void register(Closeable reader) {
+		synchronized (readers) {
+			readers.add(reader);
+		}
+	}
+
+	private static void close(Closeable reader) {
+		try {
+			reader.close();
+		} catch (IOException ex) {
+			LOG.warn("Could not close reader: " + ex);
+		}
+	}
+
+	/**
+	 * Closes the open readers and deletes the temporary file
+	 */
+	@Override
+	public void close() {
+		synchronized (readers) {
+			for (Closeable reader : readers) {
+				close(reader);
+			}
+			readers.clear();
+		}
+		if (file != null && file.exists() && !file.delete()) {
+			LOG.warn("Could not delete " + file);
+		}
+	}
+
+	/**
+	 * Provides the converted CSV records: records which can not be converted are
+	 * logged and skipped
+	 */
+	private static class CSVContentIterator implements Iterator<IContent> {
+		private final Iterator<ContentRecord> records;
+		private IContent next;
+
+		CSVContentIterator(Iterator<ContentRecord> records) {
+			this.records = records;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && records.hasNext()) {
+				ContentRecord record = records.next();
+				if (!record.getErrors().isEmpty()) {
+					LOG.error(record);
+				}
+				next = record.getContent();
+			}
+			return next != null;
+		}
+
+		@Override
+		public IContent next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			IContent result = next;
+			next = null;
+			return result;
+		}
+	}
+
+	/**
+	 * Filters the content objects by class and sets the test flag
+	 */
+	private static class ContentIterator<T extends IContent> implements Iterator<T> {
+		private final Class<T> cls;
+		private final boolean test;
+		private final Iterator<IContent> it;
+		private T next;
+
+		ContentIterator(Class<T> cls, boolean test, Iterator<IContent> it) {
+			this.cls = cls;
+			this.test = test;
+			this.it = it;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && it.hasNext()) {
+				IContent content = it.next();
+				if (cls.isInstance(content)) {
+					content.setTest(test);
+					next = cls.cast(content);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T result = next;
+			next = null;
+			return result;
+		}
+	}
+
+}
@@ -1,12 +1,15 @@
 package ch.swissqr.service.web;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -21,11 +24,12 @@ import org.apache.log4j.Logger;
 
 import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.IContent;
-import ch.swissqr.content.ch.formats.AnyFormat;
-import ch.swissqr.content.ch.formats.FormatException;
+import ch.swissqr.content.ch.PaymentReference.ReferenceType;
+import ch.swissqr.content.ch.ReferenceGenerator;
 import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.service.web.usage.UsageValidator;
 import ch.swissqr.utils.Error;
+import ch.swissqr.utils.StringUtils;
 
 /**
  * REST web-services for the bulk processing of multiple barcodes. The result is
@@ -40,6 +44,7 @@ import ch.swissqr.utils.Error;
 public class BulkService implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private final Logger LOG = Logger.getLogger(BulkService.class);
+	private static final int maxReferences = Integer.valueOf(StringUtils.getProperty("referenceMaxCount", "100000"));
 	private @Context HttpHeaders headers;
 
 	/**
@@ -53,7 +58,7 @@ public class BulkService implements Serializable {
 	 * Checks the completeness and correctness of the provided data
 	 *
 	 * @throws java.lang.Exception
-	 * @param barcodes a {@link java.lang.String} object
+	 * @param barcodes a {@link java.io.InputStream} object
 	 * @return a {@link java.util.List} object
 	 */
 
@@ -61,80 +66,164 @@ public class BulkService implements Serializable {
 	@Path("/check")
 	@Consumes({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<Error> check(String barcodes) throws Exception {
+	public List<Error> check(InputStream barcodes) throws Exception {
 		List<Error> result = new ArrayList();
 		LOG.info(headers.getRequestHeaders());
-		List<IContent> barcodeList = getContent(barcodes);
-		
-		UsageValidator.checkEx(headers, null, barcodeList.size());
-		
-		for (IContent content : barcodeList) {
-			result.addAll(content.check());
+		try (BulkInput input = BulkInput.read(barcodes)) {
+			UsageValidator.checkEx(headers, null, input.count(IContent.class));
+			result.addAll(input.check());
+		} catch (RuntimeException ex) {
+			throw unwrap(ex);
 		}
 		return result;
 	}
 
 	/**
-	 * Get one or multiple barcode images
+	 * Get one or multiple barcode images. Json content is read one record at a
+	 * time while the zip is written.
 	 *
 	 * @throws java.lang.Exception
-	 * @param barcodes a {@link java.lang.String} object
+	 * @param barcodes a {@link java.io.InputStream} object
 	 * @return a {@link javax.ws.rs.core.Response} object
 	 */
 	@POST
 	@Path("/barcodes")
 	@Consumes({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
 	@Produces({"application/zip", MediaType.APPLICATION_JSON})
-	public Response getBarcodes(String barcodes) throws Exception {
+	public Response getBarcodes(InputStream barcodes) throws Exception {
 		LOG.info("barcodes");
-		List<IContent> barcodeList = this.getContent(barcodes);
-		boolean ok = UsageValidator.check(headers, null, barcodeList.size());
-		for(IContent c : barcodeList) {
-			c.setTest(!ok);
-		}
-
-		if (barcodes.isEmpty()) {
-			LOG.info("the content is empty");
+		BulkInput input = BulkInput.read(barcodes);
+		try {
+			int count = input.count(IContent.class);
+			if (count == 0) {
+				LOG.info("the content is empty");
+			}
+			boolean ok = UsageValidator.check(headers, null, count);
+			Iterable<IContent> barcodeList = input.get(IContent.class, !ok);
+			StreamingOutput stream = new StreamingOutput() {
+				@Override
+				public void write(OutputStream os) throws IOException {
+					try {
+						CommonServicesAPI.getContent(os, barcodeList);
+					} catch (Exception e) {
+						throw new IOException(e);
+					} finally {
+						input.close();
+					}
+				}
+			};
+			return Response.ok(stream, "application/zip").build();
+		} catch (Exception ex) {
+			input.close();
+			throw ex;
 		}
-		StreamingOutput stream = CommonServicesAPI.getBarcodeStreamingOutput(barcodeList);
-		return Response.ok(stream, "application/zip").build();
 	}
 
 	/**
-	 * Get one or multiple paymentslip images
+	 * Get one or multiple paymentslip images. Json content is read one record at
+	 * a time while the zip is written.
 	 *
 	 * @throws java.lang.Exception
-	 * @param barcodes a {@link java.lang.String} object
+	 * @param barcodes a {@link java.io.InputStream} object
 	 * @return a {@link javax.ws.rs.core.Response} object
 	 */
 	@POST
 	@Path("/paymentslips")
 	@Consumes({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
 	@Produces({"application/zip", MediaType.APPLICATION_JSON})
-	public Response getPaymentSlips(String barcodes)throws Exception {
-		List<IContent> barcodeList = this.getContent(barcodes);
-		List<ContentBarcodeCH> chBarcodes = toContentBarcodeCH(barcodeList);
-		boolean ok = UsageValidator.check(headers, null, chBarcodes.size());
-		for(IContent c : barcodeList) {
-			c.setTest(!ok);
+	public Response getPaymentSlips(InputStream barcodes)throws Exception {
+		BulkInput input = BulkInput.read(barcodes);
+		try {
+			boolean ok = UsageValidator.check(headers, null, input.count(ContentBarcodeCH.class));
+			Iterable<ContentBarcodeCH> chBarcodes = input.get(ContentBarcodeCH.class, !ok);
+			StreamingOutput stream = new StreamingOutput() {
+				@Override
+				public void write(OutputStream os) throws IOException {
+					try {
+						CommonServicesAPI.getPaymentSlips(os, chBarcodes);
+					} catch (Exception e) {
+						throw new IOException(e);
+					} finally {
+						input.close();
+					}
+				}
+			};
+			return Response.ok(stream, "application/zip").build();
+		} catch (Exception ex) {
+			input.close();
+			throw ex;
 		}
+	}
 
-		StreamingOutput stream = CommonServicesAPI.getPaymentSlipStreamingOutput(chBarcodes);
-		return Response.ok(stream, "application/zip").build();
+	/**
+	 * Get all payment slips as pages of one PDF document e.g. for the printing
+	 * of mass mailings. The pages are written while the content is read.
+	 *
+	 * @throws java.lang.Exception
+	 * @param barcodes a {@link java.io.InputStream} object
+	 * @return a {@link javax.ws.rs.core.Response} object
+	 */
+	@POST
+	@Path("/paymentslips/pdf")
+	@Consumes({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
+	@Produces({"application/pdf", MediaType.APPLICATION_JSON})
+	public Response getPaymentSlipsPDF(InputStream barcodes)throws Exception {
+		BulkInput input = BulkInput.read(barcodes);
+		try {
+			boolean ok = UsageValidator.check(headers, null, input.count(ContentBarcodeCH.class));
+			Iterable<ContentBarcodeCH> chBarcodes = input.get(ContentBarcodeCH.class, !ok);
+			StreamingOutput stream = new StreamingOutput() {
+				@Override
+				public void write(OutputStream os) throws IOException {
+					try {
+						CommonServicesAPI.getPaymentSlipsPDF(os, chBarcodes);
+					} catch (Exception e) {
+						throw new IOException(e);
+					} finally {
+						input.close();
+					}
+				}
+			};
+			return Response.ok(stream, "application/pdf").build();
+		} catch (Exception ex) {
+			input.close();
+			throw ex;
+		}
 	}
 
-	private List<ContentBarcodeCH> toContentBarcodeCH(List<IContent> list) {
-		List<ContentBarcodeCH> result = new ArrayList();
-		for (IContent c : list) {
-			if (c instanceof ContentBarcodeCH) {
-				result.add((ContentBarcodeCH) c);
-			}
+	/**
+	 * Generates valid QR references (QRR) or creditor references (SCOR) for
+	 * consecutive sequence numbers (e.g. invoice numbers). The prefix (e.g. the
+	 * customer number) is added at the start of each reference.
+	 *
+	 * @param referenceType a {@link ch.swissqr.content.ch.PaymentReference.ReferenceType} object
+	 * @param prefix a {@link java.lang.String} object
+	 * @param start the first sequence number
+	 * @param count the number of references
+	 * @param licenseKey a {@link java.lang.String} object
+	 * @return a {@link java.util.List} object
+	 * @throws java.lang.Exception
+	 */
+	@GET
+	@Path("/references")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<String> getReferences(@QueryParam("referenceType") @DefaultValue("QRR") ReferenceType referenceType,
+			@QueryParam("prefix") @DefaultValue("") String prefix, @QueryParam("start") @DefaultValue("1") long start,
+			@QueryParam("count") @DefaultValue("1") int count, @QueryParam("licenseKey") String licenseKey)
+			throws Exception {
+		if (count < 1 || count > maxReferences) {
+			throw new BarcodeException("The count must be in the range 1 to " + maxReferences);
 		}
-		return result;
+		UsageValidator.checkEx(headers, licenseKey, count);
+		return new ReferenceGenerator(referenceType, prefix, start, count).next(count);
 	}
 
-	private List<IContent> getContent(String contentString) throws FormatException, IOException, ParseException, BarcodeException {
-		return AnyFormat.read(contentString);
+	/**
+	 * Reports errors of the lazy reading with their original exception
+	 */
+	private Exception unwrap(RuntimeException ex) {
+		Throwable cause = ex.getCause();
+		return cause instanceof BarcodeException || cause instanceof IOException ? (Exception) cause : ex;
 	}
 
 }
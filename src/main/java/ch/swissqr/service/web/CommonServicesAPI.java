@@ -1,6 +1,7 @@
 package ch.swissqr.service.web;
 
 import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -9,11 +10,11 @@ import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import javax.imageio.ImageIO;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.log4j.Logger;
 
+import ch.swissqr.barcode.EncoderSession;
 import ch.swissqr.barcode.ErrorCorrectionLevel;
 import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.ContentBarcodeEU;
@@ -22,8 +23,13 @@ import ch.swissqr.content.IContent;
 import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.paymentslip.PaymentSlipPDF;
 import ch.swissqr.paymentslip.PaymentSlipPDF.Format;
+import ch.swissqr.paymentslip.PaymentSlipWriter;
+import ch.swissqr.pdf.DocumentBase;
+import ch.swissqr.pdf.RasterOptions;
 import ch.swissqr.utils.Error;
+import ch.swissqr.utils.Metrics;
 import ch.swissqr.utils.StringUtils;
+import ch.swissqr.utils.WorkerPool;
 
 /**
  * Top Level Java API for the writing pictures and pdfs to an output stream.
@@ -35,6 +41,9 @@ public class CommonServicesAPI {
 	private static Logger LOG = Logger.getLogger(CommonServicesAPI.class);
 	/** Constant <code>TEST_IBAN="CH4431999123000889012"</code> */
 	public static String TEST_IBAN = "CH4431999123000889012";
+	private static final String PAYMENT_SLIP_METRICS = "paymentSlip";
+	private static volatile int paymentSlipParallelism = Integer.valueOf(
+			StringUtils.getProperty("paymentSlipParallelism", String.valueOf(WorkerPool.getThreads() * 2)));
 	/**
 	 * Converts a collection of strings into a stream of QR barcode images
 	 *
@@ -94,35 +103,26 @@ public class CommonServicesAPI {
 	 * <p>getContent.</p>
 	 *
 	 * @param result a {@link java.io.OutputStream} object
-	 * @param input a {@link java.util.Collection} object
+	 * @param input a {@link java.lang.Iterable} object which is consumed lazily
 	 * @throws ch.swissqr.errors.BarcodeException if any.
 	 * @throws java.io.IOException if any.
 	 */
-	protected static void getContent(OutputStream result, Collection<IContent> input)
+	protected static void getContent(OutputStream result, Iterable<IContent> input)
 			throws BarcodeException, IOException {
 
-		if (input.isEmpty()) {
-			throw new BarcodeException("The barcode content must not be empty");
-		}
-
+		// the images are rendered in parallel and written to the zip in the input order
 		ZipOutputStream out = new ZipOutputStream(result);
-		int count = 1;
-		for (IContent code : input) {
-			String fileName = StringUtils.getProperty(code.getProperties(), "filename", ""+count);			
+		int count = WorkerPool.process(input, (code, index) -> {
+			String fileName = StringUtils.getProperty(code.getProperties(), "filename", ""+(index+1));			
 			String pictureFormat = StringUtils.getProperty(code.getProperties(), "pictureFormat","png");
-			fileName = fileName + "."+pictureFormat;
-
-			ZipEntry e = new ZipEntry(fileName);
-			out.putNextEntry(e);
-			
 			String mm = StringUtils.getProperty(code.getProperties(), "dimension", "46");			
 			ErrorCorrectionLevel ec = ErrorCorrectionLevel.valueOf(StringUtils.getProperty(code.getProperties(), "errorCorrection", "M"));
 
 			BufferedImage image = code.toBarcode(pictureFormat, Double.valueOf(mm), ec);
-			ImageIO.write(image, pictureFormat, out);
-			out.flush();
-			out.closeEntry();
-			count++;
+			return new ZipContent(fileName + "."+pictureFormat, EncoderSession.get().toBytes(image, pictureFormat));
+		}, entry -> entry.write(out));
+		if (count == 0) {
+			throw new BarcodeException("The barcode content must not be empty");
 		}
 		out.flush();
 		out.close();
@@ -156,42 +156,111 @@ public class CommonServicesAPI {
 	 * @throws ch.swissqr.errors.BarcodeException
 	 * @throws java.io.IOException
 	 * @param result a {@link java.io.OutputStream} object
-	 * @param input a {@link java.util.Collection} object
+	 * @param input a {@link java.lang.Iterable} object which is consumed lazily
 	 */
-	protected static void getPaymentSlips(OutputStream result, Collection<ContentBarcodeCH> input)
+	protected static void getPaymentSlips(OutputStream result, Iterable<ContentBarcodeCH> input)
 			throws BarcodeException, IOException {
 
-
-		if (input.isEmpty()) {
-			throw new BarcodeException("The barcode content must not be empty");
-		}
-
+		// the slips are created in parallel and written to the zip in the input order
 		ZipOutputStream out = new ZipOutputStream(result);
-		int count = 1;
-		for (ContentBarcodeCH code : input) {
+		int count = WorkerPool.process(input, paymentSlipParallelism, (code, index) -> {
+			long start = System.nanoTime();
 			String pictureFormat = StringUtils.getProperty(code.getProperties(), "pictureFormat","pdf");
 			String language = StringUtils.getProperty(code.getProperties(), "language", "de");
-			String fileName = StringUtils.getProperty(code.getProperties(), "filename", count+"");
+			String fileName = StringUtils.getProperty(code.getProperties(), "filename", (index+1)+"");
 			fileName = fileName+"."+pictureFormat;
 			String strFormat = StringUtils.getProperty(code.getProperties(), "pageFormat", "A4");
 			boolean printLines = "true".equals(StringUtils.getProperty(code.getProperties(), "printLines", "true"));
 			boolean printReceip = !"false".equals(StringUtils.getProperty(code.getProperties(), "printReceipt", "true"));
 			Format paperFormat = Format.valueOf(strFormat);
 			PaymentSlipPDF slip = new PaymentSlipPDF(code, language, paperFormat, printLines,printReceip);
-
-			ZipEntry e = new ZipEntry(fileName);
-			out.putNextEntry(e);
-
-			byte[] data = slip.getBytes(pictureFormat);
-			out.write(data, 0, data.length);
-			out.closeEntry();
-			count++;
+			ZipContent entry;
+			if (DocumentBase.isPDF(pictureFormat)) {
+				// the document is saved directly into the zip entry
+				entry = new ZipContent(fileName, slip);
+			} else {
+				try {
+					entry = new ZipContent(fileName, slip.getBytes(pictureFormat));
+				} finally {
+					slip.close();
+				}
+			}
+			long nanos = Metrics.get(PAYMENT_SLIP_METRICS).recordSince(start);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Payment slip " + fileName + " created in " + nanos / 1000000 + " ms");
+			}
+			return entry;
+		}, entry -> entry.write(out));
+		if (count == 0) {
+			throw new BarcodeException("The barcode content must not be empty");
 		}
 		out.flush();
 		out.close();
 
 	}
 
+	/**
+	 * Writes all payment slips as pages of one PDF document. Each page is
+	 * written to the output stream as soon as it has been printed. The document
+	 * is only completed if all slips could be printed.
+	 *
+	 * @throws ch.swissqr.errors.BarcodeException
+	 * @throws java.io.IOException
+	 * @param result a {@link java.io.OutputStream} object
+	 * @param input a {@link java.lang.Iterable} object which is consumed lazily
+	 */
+	protected static void getPaymentSlipsPDF(OutputStream result, Iterable<ContentBarcodeCH> input)
+			throws BarcodeException, IOException {
+		PaymentSlipWriter writer = new PaymentSlipWriter(result);
+		try {
+			for (ContentBarcodeCH code : input) {
+				long start = System.nanoTime();
+				String language = StringUtils.getProperty(code.getProperties(), "language", "de");
+				String strFormat = StringUtils.getProperty(code.getProperties(), "pageFormat", "A4");
+				boolean printLines = "true".equals(StringUtils.getProperty(code.getProperties(), "printLines", "true"));
+				boolean printReceip = !"false".equals(StringUtils.getProperty(code.getProperties(), "printReceipt", "true"));
+				writer.add(code, language, Format.valueOf(strFormat), printLines, printReceip);
+				Metrics.get(PAYMENT_SLIP_METRICS).recordSince(start);
+			}
+			if (writer.getPageCount() == 0) {
+				throw new BarcodeException("The barcode content must not be empty");
+			}
+		} catch (BarcodeException | IOException | RuntimeException ex) {
+			// the document is not finished, so that the error is not hidden by a valid pdf
+			writer.abort();
+			throw ex;
+		}
+		writer.close();
+	}
+
+	/**
+	 * Returns the timing metrics of the payment slip generation
+	 *
+	 * @return a {@link ch.swissqr.utils.Metrics} object
+	 */
+	public static Metrics getPaymentSlipMetrics() {
+		return Metrics.get(PAYMENT_SLIP_METRICS);
+	}
+
+	/**
+	 * Defines the number of payment slips which are created or waiting to be written
+	 * at the same time. 1 creates the slips sequentially.
+	 *
+	 * @param parallelism a int
+	 */
+	public static void setPaymentSlipParallelism(int parallelism) {
+		paymentSlipParallelism = parallelism;
+	}
+
+	/**
+	 * <p>Getter for the field <code>paymentSlipParallelism</code>.</p>
+	 *
+	 * @return a int
+	 */
+	public static int getPaymentSlipParallelism() {
+		return paymentSlipParallelism;
+	}
+
 	/**
 	 * <p>getBarcodeStreamingOutput.</p>
 	 *
@@ -232,4 +301,116 @@ public class CommonServicesAPI {
 		return stream;
 	}
 
+	/**
+	 * Determines the raster options of a payment slip picture. The parameters
+	 * are validated before the slip is created, so that no document needs to be
+	 * released if they are invalid.
+	 *
+	 * @param pageFormat the format of the payment slip
+	 * @param dpi resolution in dots per inch: empty for the default
+	 * @param colors rgb, gray or bitonal
+	 * @param region page or qr to render only the QR code
+	 * @return a {@link ch.swissqr.pdf.RasterOptions} object
+	 * @throws ch.swissqr.errors.BarcodeException if a parameter is not valid
+	 */
+	public static RasterOptions getRasterOptions(Format pageFormat, String dpi, String colors, String region)
+			throws BarcodeException {
+		try {
+			RasterOptions result = new RasterOptions().colors(colors);
+			if (!StringUtils.isEmpty(dpi)) {
+				result.dpi(Float.valueOf(dpi));
+			}
+			if ("qr".equalsIgnoreCase(region)) {
+				result.region(PaymentSlipPDF.getBarcodeRegion(pageFormat));
+			} else if (!StringUtils.isEmpty(region) && !"page".equalsIgnoreCase(region)) {
+				throw new BarcodeException("Unsupported region: " + region + " - use page or qr");
+			}
+			return result;
+		} catch (NumberFormatException ex) {
+			throw new BarcodeException("The dpi must be a number: " + dpi);
+		} catch (IllegalArgumentException ex) {
+			throw new BarcodeException(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the pdf document or the picture to the output stream and closes
+	 * the document, so that it is not kept in memory as document and as bytes.
+	 *
+	 * @param document a {@link ch.swissqr.pdf.DocumentBase} object
+	 * @param pictureFormat a {@link java.lang.String} object
+	 * @return a {@link javax.ws.rs.core.StreamingOutput} object
+	 */
+	public static StreamingOutput getStreamingOutput(DocumentBase document, String pictureFormat) {
+		return getStreamingOutput(document, pictureFormat, new RasterOptions());
+	}
+
+	/**
+	 * Writes the pdf document or the picture which is rendered with the
+	 * indicated options to the output stream and closes the document.
+	 *
+	 * @param document a {@link ch.swissqr.pdf.DocumentBase} object
+	 * @param pictureFormat a {@link java.lang.String} object
+	 * @param options a {@link ch.swissqr.pdf.RasterOptions} object
+	 * @return a {@link javax.ws.rs.core.StreamingOutput} object
+	 */
+	public static StreamingOutput getStreamingOutput(DocumentBase document, String pictureFormat, RasterOptions options) {
+		StreamingOutput stream = new StreamingOutput() {
+			@Override
+			public void write(OutputStream os) throws IOException {
+				try {
+					document.write(os, pictureFormat, options);
+				} finally {
+					document.close();
+				}
+			}
+		};
+		return stream;
+	}
+
+	/**
+	 * Zip entry with the rendered picture or with the pdf document which is
+	 * saved directly into the entry
+	 */
+	private static class ZipContent implements Closeable {
+		private String fileName;
+		private byte[] data;
+		private DocumentBase document;
+
+		ZipContent(String fileName, byte[] data) {
+			this.fileName = fileName;
+			this.data = data;
+		}
+
+		ZipContent(String fileName, DocumentBase document) {
+			this.fileName = fileName;
+			this.document = document;
+		}
+
+		void write(ZipOutputStream out) throws IOException {
+			out.putNextEntry(new ZipEntry(fileName));
+			if (document != null) {
+				try {
+					document.write(out);
+				} finally {
+					close();
+				}
+			} else {
+				out.write(data);
+			}
+			out.closeEntry();
+		}
+
+		/**
+		 * Releases the document if the entry is not written
+		 */
+		@Override
+		public void close() throws IOException {
+			if (document != null) {
+				document.close();
+				document = null;
+			}
+		}
+	}
+
 }
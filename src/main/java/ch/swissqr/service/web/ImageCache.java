@@ -0,0 +1,387 @@
+package ch.swissqr.service.web;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.log4j.Logger;
+
+import ch.swissqr.barcode.EncoderSession;
+import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.utils.StringUtils;
+
+/**
+ * Content addressed cache for the encoded barcode images which are returned by
+ * the REST services. The key is a SHA-256 hash over the payload string, the
+ * image format, the dimension, the error correction level and the test flag,
+ * so the same key always identifies the same image and can be used as ETag.
+ *
+ * The images are kept in memory (least recently used entries are evicted when
+ * the number of entries or the total size is exceeded) and optionally in a
+ * directory on disk. The limits can be defined with the system or environment
+ * properties 'imageCacheSize', 'imageCacheMaxBytes', 'imageCacheDir' and
+ * 'imageCacheDiskSize'.
+ *
+ * @author pschatzmann
+ */
+public class ImageCache {
+	private static final Logger LOG = Logger.getLogger(ImageCache.class);
+	private static int maxEntries = Integer.valueOf(StringUtils.getProperty("imageCacheSize", "1000"));
+	private static long maxBytes = Long.valueOf(StringUtils.getProperty("imageCacheMaxBytes", "33554432"));
+	private static int maxDiskEntries = Integer.valueOf(StringUtils.getProperty("imageCacheDiskSize", "10000"));
+	private static File directory;
+	private static int diskEntries = 0;
+	private static long bytes = 0;
+	private static long hits = 0;
+	private static long diskHits = 0;
+	private static long misses = 0;
+	private static final Map<String, byte[]> cache = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	static {
+		String dir = StringUtils.getProperty("imageCacheDir", "");
+		if (!StringUtils.isEmpty(dir)) {
+			setDirectory(new File(dir));
+		}
+	}
+
+	/**
+	 * Creates the image if it is not available in the cache
+	 */
+	public interface ImageGenerator {
+		byte[] create() throws BarcodeException, IOException;
+	}
+
+	/**
+	 * Determines the key for the indicated parameters
+	 *
+	 * @param parameters the payload, format, dimension, error correction level, test flag
+	 * @return a {@link java.lang.String} object
+	 */
+	public static String getKey(Object... parameters) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (Object parameter : parameters) {
+				digest.update(String.valueOf(parameter).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+			StringBuilder sb = new StringBuilder(64);
+			for (byte b : digest.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Returns the image for the key: if it is not available in memory or on disk we
+	 * create it with the generator and add it to the cache.
+	 *
+	 * @param key a {@link java.lang.String} object
+	 * @param generator a {@link ch.swissqr.service.web.ImageCache.ImageGenerator} object
+	 * @return an array of {@link byte} objects
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public static byte[] get(String key, ImageGenerator generator) throws BarcodeException, IOException {
+		byte[] result;
+		synchronized (cache) {
+			result = cache.get(key);
+			if (result != null) {
+				hits++;
+				return result;
+			}
+		}
+		result = readFromDisk(key);
+		if (result != null) {
+			synchronized (cache) {
+				diskHits++;
+			}
+			putInMemory(key, result);
+			return result;
+		}
+		synchronized (cache) {
+			misses++;
+		}
+		// we create the image outside of the lock: in the worst case the same image is created twice
+		result = generator.create();
+		put(key, result);
+		return result;
+	}
+
+	/**
+	 * Adds the image to the cache
+	 *
+	 * @param key a {@link java.lang.String} object
+	 * @param image an array of {@link byte} objects
+	 */
+	public static void put(String key, byte[] image) {
+		putInMemory(key, image);
+		writeToDisk(key, image);
+	}
+
+	/**
+	 * Returns the image as http response with the key as ETag. If the request
+	 * contains a matching If-None-Match header we just return 304 (Not Modified)
+	 * without creating the image.
+	 *
+	 * @param headers a {@link javax.ws.rs.core.HttpHeaders} object
+	 * @param format the image format (e.g. png)
+	 * @param key a {@link java.lang.String} object
+	 * @param generator a {@link ch.swissqr.service.web.ImageCache.ImageGenerator} object
+	 * @return a {@link javax.ws.rs.core.Response} object
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public static Response getResponse(HttpHeaders headers, String format, String key, ImageGenerator generator)
+			throws BarcodeException, IOException {
+		EntityTag tag = new EntityTag(key);
+		String ifNoneMatch = headers == null ? null : headers.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+		if (isMatching(ifNoneMatch, key)) {
+			synchronized (cache) {
+				hits++;
+			}
+			return Response.status(Status.NOT_MODIFIED).tag(tag).build();
+		}
+		return Response.ok(get(key, generator), "image/" + format).tag(tag).build();
+	}
+
+	/**
+	 * Encodes the image in the indicated format
+	 *
+	 * @param image a {@link java.awt.image.BufferedImage} object
+	 * @param format a {@link java.lang.String} object
+	 * @return an array of {@link byte} objects
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public static byte[] toBytes(BufferedImage image, String format) throws BarcodeException, IOException {
+		return EncoderSession.get().toBytes(image, format);
+	}
+
+	/**
+	 * Checks if the If-None-Match header value contains the key
+	 */
+	static boolean isMatching(String ifNoneMatch, String key) {
+		if (StringUtils.isEmpty(ifNoneMatch)) {
+			return false;
+		}
+		for (String value : ifNoneMatch.split(",")) {
+			value = value.trim();
+			if (value.startsWith("W/")) {
+				value = value.substring(2);
+			}
+			if (value.equals("*") || value.equals("\"" + key + "\"")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void putInMemory(String key, byte[] image) {
+		synchronized (cache) {
+			byte[] old = cache.put(key, image);
+			if (old != null) {
+				bytes -= old.length;
+			}
+			bytes += image.length;
+			Iterator<Map.Entry<String, byte[]>> it = cache.entrySet().iterator();
+			while ((cache.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+				Map.Entry<String, byte[]> eldest = it.next();
+				LOG.debug("Evicting image " + eldest.getKey());
+				bytes -= eldest.getValue().length;
+				it.remove();
+			}
+		}
+	}
+
+	private static byte[] readFromDisk(String key) {
+		File dir = directory;
+		if (dir != null) {
+			File file = new File(dir, key);
+			try {
+				if (file.exists()) {
+					byte[] result = Files.readAllBytes(file.toPath());
+					file.setLastModified(System.currentTimeMillis());
+					return result;
+				}
+			} catch (IOException ex) {
+				LOG.warn("Could not read cached image " + file + ": " + ex);
+			}
+		}
+		return null;
+	}
+
+	private static void writeToDisk(String key, byte[] image) {
+		File dir = directory;
+		if (dir != null) {
+			File file = new File(dir, key);
+			try {
+				File tmp = File.createTempFile(key, ".tmp", dir);
+				Files.write(tmp.toPath(), image);
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				boolean evict;
+				synchronized (cache) {
+					evict = ++diskEntries > maxDiskEntries;
+				}
+				if (evict) {
+					evictFromDisk(dir);
+				}
+			} catch (IOException ex) {
+				LOG.warn("Could not write cached image " + file + ": " + ex);
+			}
+		}
+	}
+
+	/**
+	 * Removes the least recently used 10% of the files
+	 */
+	private static synchronized void evictFromDisk(File dir) {
+		File[] files = listFiles(dir);
+		int keep = maxDiskEntries - maxDiskEntries / 10;
+		if (files.length > keep) {
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (int j = 0; j < files.length - keep; j++) {
+				files[j].delete();
+			}
+		}
+		synchronized (cache) {
+			diskEntries = Math.min(files.length, keep);
+		}
+	}
+
+	private static File[] listFiles(File dir) {
+		File[] files = dir.listFiles((d, name) -> !name.endsWith(".tmp"));
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Defines the directory for the disk cache. If it is null only the memory is used.
+	 *
+	 * @param dir a {@link java.io.File} object
+	 */
+	public static void setDirectory(File dir) {
+		if (dir != null) {
+			dir.mkdirs();
+			LOG.info("Using image cache directory " + dir.getAbsolutePath());
+		}
+		synchronized (cache) {
+			diskEntries = dir == null ? 0 : listFiles(dir).length;
+			directory = dir;
+		}
+	}
+
+	/**
+	 * <p>Getter for the field <code>directory</code>.</p>
+	 *
+	 * @return a {@link java.io.File} object
+	 */
+	public static File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Removes all images from memory
+	 */
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of images in memory
+	 *
+	 * @return a int
+	 */
+	public static int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Returns the total size of the images in memory
+	 *
+	 * @return a long
+	 */
+	public static long getBytes() {
+		synchronized (cache) {
+			return bytes;
+		}
+	}
+
+	/**
+	 * Returns the number of requests which were served from memory or with 304
+	 *
+	 * @return a long
+	 */
+	public static long getHits() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of requests which were served from the disk
+	 *
+	 * @return a long
+	 */
+	public static long getDiskHits() {
+		synchronized (cache) {
+			return diskHits;
+		}
+	}
+
+	/**
+	 * Returns the number of images which needed to be created
+	 *
+	 * @return a long
+	 */
+	public static long getMisses() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Defines the maximum number of images in memory
+	 *
+	 * @param max a int
+	 */
+	public static void setMaxEntries(int max) {
+		synchronized (cache) {
+			maxEntries = max;
+		}
+	}
+
+	/**
+	 * Defines the maximum total size of the images in memory
+	 *
+	 * @param max a long
+	 */
+	public static void setMaxBytes(long max) {
+		synchronized (cache) {
+			maxBytes = max;
+		}
+	}
+
+}
@@ -133,7 +133,8 @@ public class QRSimpleEU {
 		}
 
 		String format = getFormatFromMime();
-		return Response.ok(euCode.toBarcode(format, mm, errorCorrectionLevel)).build();
+		String key = ImageCache.getKey(euCode.getContentType(), euCode.getContent(), format, mm, errorCorrectionLevel, euCode.isTest());
+		return ImageCache.getResponse(headers, format, key, () -> ImageCache.toBytes(euCode.toBarcode(format, mm, errorCorrectionLevel), format));
 
 	}
 
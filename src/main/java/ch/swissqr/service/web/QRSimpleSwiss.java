@@ -1,6 +1,5 @@
 package ch.swissqr.service.web;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
@@ -12,6 +11,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.TreeMap;
 
 import javax.ws.rs.Consumes;
@@ -34,6 +34,7 @@ import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 
 
+import ch.swissqr.barcode.ErrorCorrectionLevel;
 import ch.swissqr.barcode.QRBarcode;
 import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.ch.PaymentReference.ReferenceType;
@@ -42,6 +43,7 @@ import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.errors.LicenceError;
 import ch.swissqr.paymentslip.PaymentSlipPDF;
 import ch.swissqr.paymentslip.PaymentSlipPDF.Format;
+import ch.swissqr.pdf.RasterOptions;
 import ch.swissqr.service.web.usage.UsageValidator;
 import ch.swissqr.utils.Error;
 import ch.swissqr.utils.StringUtils;
@@ -284,7 +286,8 @@ public class QRSimpleSwiss {
 		content.setDataMap(toMap(uriDetails.getQueryParameters()));
 		String format = getFormatFromMime();
 
-		return Response.ok(content.toBarcode(format, null, null)).build();
+		String key = ImageCache.getKey(content.getContentType(), content.getContent(), format, 46.0, ErrorCorrectionLevel.M, content.isTest());
+		return ImageCache.getResponse(headers, format, key, () -> ImageCache.toBytes(content.toBarcode(format, null, null), format));
 	}
 	
 	/**
@@ -345,6 +348,9 @@ public class QRSimpleSwiss {
 	 * @param pageFormat a {@link ch.swissqr.paymentslip.PaymentSlipPDF.Format} object
 	 * @param printLintes a boolean
 	 * @param printReceipt a boolean
+	 * @param dpi resolution of the picture in dots per inch
+	 * @param colors color model of the picture: rgb, gray or bitonal
+	 * @param region rendered region of the picture: page or qr
 	 * @param language a {@link ch.swissqr.service.web.QRSimpleSwiss.Langauge} object
 	 * @param iban a {@link java.lang.String} object
 	 * @param creditor a {@link java.lang.String} object
@@ -402,6 +408,9 @@ public class QRSimpleSwiss {
 			@DefaultValue("A4") Format pageFormat,
 			@QueryParam("printLines") @DefaultValue("true") boolean printLintes,
 			@QueryParam("printReceipt") @DefaultValue("true") boolean printReceipt,
+			@QueryParam("dpi") String dpi,
+			@QueryParam("colors") @DefaultValue("rgb") String colors,
+			@QueryParam("region") @DefaultValue("page") String region,
 			@QueryParam("language") @DefaultValue("de") Langauge language, @QueryParam("IBAN") String iban,
 			@QueryParam("Creditor") String creditor,
 			@QueryParam("CreditorName") String crName,
@@ -457,9 +466,9 @@ public class QRSimpleSwiss {
 		content.setDataMap(toMap(uriDetails.getQueryParameters()));
 		content.setTest(!ok);
 
+		RasterOptions options = CommonServicesAPI.getRasterOptions(pageFormat, dpi, colors, region);
 		PaymentSlipPDF ps = new PaymentSlipPDF(content, language.name(), pageFormat, printLintes, printReceipt);
-		byte[] imageData = ps.getBytes(format);
-		return Response.ok(new ByteArrayInputStream(imageData)).build();
+		return Response.ok(CommonServicesAPI.getStreamingOutput(ps, format, options)).build();
 	}
 	
 	
@@ -492,9 +501,11 @@ public class QRSimpleSwiss {
 		content.setTest(!ok);
 		String format = getFormatFromMime();
 		
-		PaymentSlipPDF ps = new PaymentSlipPDF(content, content.getProperties().getProperty("langauge", "de"), getPageFormat(content), getPrintLines(content), getPrintReceipt(content));
-		byte[] imageData = ps.getBytes(format);
-		return Response.ok(new ByteArrayInputStream(imageData)).build();
+		Properties p = content.getProperties();
+		Format pageFormat = getPageFormat(content);
+		RasterOptions options = CommonServicesAPI.getRasterOptions(pageFormat, p.getProperty("dpi"), p.getProperty("colors"), p.getProperty("region"));
+		PaymentSlipPDF ps = new PaymentSlipPDF(content, content.getProperties().getProperty("langauge", "de"), pageFormat, getPrintLines(content), getPrintReceipt(content));
+		return Response.ok(CommonServicesAPI.getStreamingOutput(ps, format, options)).build();
 	
 	}
 
@@ -42,4 +42,13 @@ public class Convert {
 		return Double.valueOf(mm / 25.4 * dpi).intValue();
 	}
 
+	/**
+	 * <p>Getter for the field <code>dpi</code>.</p>
+	 *
+	 * @return a double
+	 */
+	public double getDpi() {
+		return dpi;
+	}
+
 }
@@ -0,0 +1,129 @@
+package ch.swissqr.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple named timing metrics: number of measurements, total and maximum
+ * duration. The metrics are process wide and thread safe.
+ *
+ * @author pschatzmann
+ */
+public class Metrics {
+	private static final Map<String, Metrics> metrics = new ConcurrentHashMap();
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	private Metrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the metrics with the indicated name
+	 *
+	 * @param name a {@link java.lang.String} object
+	 * @return a {@link ch.swissqr.utils.Metrics} object
+	 */
+	public static Metrics get(String name) {
+		return metrics.computeIfAbsent(name, Metrics::new);
+	}
+
+	/**
+	 * Returns all metrics sorted by name
+	 *
+	 * @return a {@link java.util.Map} object
+	 */
+	public static Map<String, Metrics> getAll() {
+		return new TreeMap(metrics);
+	}
+
+	/**
+	 * Records a measurement which was started with System.nanoTime()
+	 *
+	 * @param startNanos a long
+	 * @return the duration in nanoseconds
+	 */
+	public long recordSince(long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		record(nanos);
+		return nanos;
+	}
+
+	/**
+	 * Records a measurement
+	 *
+	 * @param nanos a long
+	 */
+	public void record(long nanos) {
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Resets the measurements
+	 */
+	public void reset() {
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	/**
+	 * <p>Getter for the field <code>name</code>.</p>
+	 *
+	 * @return a {@link java.lang.String} object
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of measurements
+	 *
+	 * @return a long
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the total duration in milliseconds
+	 *
+	 * @return a double
+	 */
+	public double getTotalMs() {
+		return totalNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Returns the average duration in milliseconds
+	 *
+	 * @return a double
+	 */
+	public double getAverageMs() {
+		long n = count.get();
+		return n == 0 ? 0 : totalNanos.get() / 1000000.0 / n;
+	}
+
+	/**
+	 * Returns the maximum duration in milliseconds
+	 *
+	 * @return a double
+	 */
+	public double getMaxMs() {
+		return maxNanos.get() / 1000000.0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return String.format("%s: count=%d avg=%.2fms max=%.2fms total=%.0fms", name, getCount(), getAverageMs(),
+				getMaxMs(), getTotalMs());
+	}
+
+}
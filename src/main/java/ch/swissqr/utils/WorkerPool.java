@@ -0,0 +1,197 @@
+package ch.swissqr.utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import ch.swissqr.errors.BarcodeException;
+
+/**
+ * Bounded pool of worker threads which process the input elements in parallel
+ * while a single writer (the calling thread) consumes the results in the input
+ * order. Results are written as soon as they and all their predecessors are
+ * available. By default at most 2 results per thread are pending, so the memory
+ * stays bounded independent of the number of input elements.
+ *
+ * The number of threads can be defined with the system or environment property
+ * 'workerThreads'. It defaults to the number of available processors. With 1
+ * thread everything is processed sequentially in the calling thread.
+ *
+ * If the processing fails the results which are {@link AutoCloseable} (e.g.
+ * open documents) and have not been passed to the writer are closed.
+ *
+ * @author pschatzmann
+ */
+public class WorkerPool {
+	private static final Logger LOG = Logger.getLogger(WorkerPool.class);
+	private static final int threads = Integer.valueOf(
+			StringUtils.getProperty("workerThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	private static ExecutorService executor;
+
+	/**
+	 * Processes one input element in a worker thread
+	 */
+	public interface Worker<T, R> {
+		R process(T input, int index) throws Exception;
+	}
+
+	/**
+	 * Consumes the results in the input order in the calling thread
+	 */
+	public interface Writer<R> {
+		void write(R result) throws Exception;
+	}
+
+	/**
+	 * Processes all input elements and writes the results in the input order
+	 *
+	 * @param input a {@link java.lang.Iterable} object
+	 * @param worker a {@link ch.swissqr.utils.WorkerPool.Worker} object
+	 * @param writer a {@link ch.swissqr.utils.WorkerPool.Writer} object
+	 * @return the number of processed elements
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public static <T, R> int process(Iterable<T> input, Worker<T, R> worker, Writer<R> writer)
+			throws BarcodeException, IOException {
+		return process(input, threads * 2, worker, writer);
+	}
+
+	/**
+	 * Processes all input elements and writes the results in the input order. The
+	 * parallelism defines the maximum number of elements which are processed or
+	 * waiting to be written at the same time. The input is consumed lazily, so it
+	 * can be a stream of elements which is read while the results are written.
+	 *
+	 * @param input a {@link java.lang.Iterable} object
+	 * @param parallelism a int
+	 * @param worker a {@link ch.swissqr.utils.WorkerPool.Worker} object
+	 * @param writer a {@link ch.swissqr.utils.WorkerPool.Writer} object
+	 * @return the number of processed elements
+	 * @throws ch.swissqr.errors.BarcodeException if any.
+	 * @throws java.io.IOException if any.
+	 */
+	public static <T, R> int process(Iterable<T> input, int parallelism, Worker<T, R> worker, Writer<R> writer)
+			throws BarcodeException, IOException {
+		int index = 0;
+		if (threads <= 1 || parallelism <= 1) {
+			try {
+				for (T element : input) {
+					writer.write(worker.process(element, index++));
+				}
+			} catch (Exception ex) {
+				rethrow(ex);
+			}
+			return index;
+		}
+
+		ExecutorService executor = getExecutor();
+		Deque<Future<R>> pending = new ArrayDeque(parallelism);
+		AtomicBoolean aborted = new AtomicBoolean();
+		try {
+			for (T element : input) {
+				if (pending.size() >= parallelism) {
+					writer.write(get(pending.removeFirst()));
+				}
+				// write the results which are already available
+				while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+					writer.write(get(pending.removeFirst()));
+				}
+				final int current = index++;
+				pending.addLast(executor.submit(() -> aborted.get() ? null : worker.process(element, current)));
+			}
+			while (!pending.isEmpty()) {
+				writer.write(get(pending.removeFirst()));
+			}
+		} catch (Exception ex) {
+			// the tasks which have not started are skipped and the results of the
+			// others are released
+			aborted.set(true);
+			for (Future<R> future : pending) {
+				release(future);
+			}
+			rethrow(ex);
+		}
+		return index;
+	}
+
+	private static <R> void release(Future<R> future) {
+		try {
+			R result = future.get();
+			if (result instanceof AutoCloseable) {
+				((AutoCloseable) result).close();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (Exception ex) {
+			LOG.debug("Result not released: " + ex.getMessage());
+		}
+	}
+
+	private static <R> R get(Future<R> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw new BarcodeException(ex);
+		}
+	}
+
+	private static void rethrow(Exception ex) throws BarcodeException, IOException {
+		// iterators can only report errors as unchecked exceptions
+		if (ex instanceof RuntimeException && ex.getCause() instanceof Exception) {
+			Exception cause = (Exception) ex.getCause();
+			if (cause instanceof BarcodeException || cause instanceof IOException) {
+				ex = cause;
+			}
+		}
+		if (ex instanceof BarcodeException) {
+			throw (BarcodeException) ex;
+		}
+		if (ex instanceof IOException) {
+			throw (IOException) ex;
+		}
+		if (ex instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+		}
+		throw new BarcodeException(ex);
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			LOG.info("Starting worker pool with " + threads + " threads");
+			AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "swissqr-worker-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Returns the number of worker threads
+	 *
+	 * @return a int
+	 */
+	public static int getThreads() {
+		return threads;
+	}
+
+}
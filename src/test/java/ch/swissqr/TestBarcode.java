@@ -1,17 +1,24 @@
 package ch.swissqr;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.imageio.ImageIO;
+import javax.ws.rs.core.Response;
 
 import org.glassfish.jersey.internal.Errors;
 import org.junit.Assert;
@@ -19,8 +26,17 @@ import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import ch.swissqr.barcode.BitMatrixRenderer;
+import ch.swissqr.barcode.EncoderSession;
+import ch.swissqr.barcode.ErrorCorrectionLevel;
 import ch.swissqr.barcode.IBarcode;
+import ch.swissqr.barcode.OverlayCache;
 import ch.swissqr.barcode.QRBarcode;
+import ch.swissqr.barcode.QRDecoder;
 import ch.swissqr.barcode.QRSwissBarcode;
 import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.ch.Address;
@@ -31,6 +47,8 @@ import ch.swissqr.content.ch.PaymentReference;
 import ch.swissqr.content.ch.PaymentReference.ReferenceType;
 import ch.swissqr.content.ch.formats.FormatException;
 import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.service.web.CommonServicesAPI;
+import ch.swissqr.service.web.ImageCache;
 import ch.swissqr.utils.Error;
 import ch.swissqr.utils.StringUtils;
 
@@ -64,6 +82,22 @@ public class TestBarcode {
 	}
 
 	
+	@Test
+	public void testBitMatrixRenderer() throws Exception {
+		BitMatrix matrix = new QRCodeWriter().encode(getContent(), BarcodeFormat.QR_CODE, 217, 217);
+		for (int type : Arrays.asList(BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_GRAY)) {
+			BufferedImage image = new BitMatrixRenderer(type).render(matrix);
+			for (int y = 0; y < matrix.getHeight(); y++) {
+				for (int x = 0; x < matrix.getWidth(); x++) {
+					int expected = matrix.get(x, y) ? 0xFF000000 : 0xFFFFFFFF;
+					Assert.assertEquals(expected, image.getRGB(x, y));
+				}
+			}
+			Assert.assertEquals(getContent(), new QRBarcode().readImage(image));
+		}
+		Assert.assertTrue(BitMatrixRenderer.getRenderedPixels() > 0);
+	}
+
 	@Test
 	public void testSwissBarCode() throws Exception {
 		IBarcode bc = new QRSwissBarcode();
@@ -71,6 +105,154 @@ public class TestBarcode {
 		FileOutputStream fos = new FileOutputStream("src/test/resources/testSwiss.png");
 		fos.write(ba);
 		fos.close();
+
+		// 46 mm at 120 dpi, decodable and with a quiet zone of 1 module: also for
+		// the longer normalized payload with more and smaller modules
+		for (String content : Arrays.asList(getContent(), new ContentBarcodeCH(getContent()).getContent())) {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(bc.create(content, "png")));
+			Assert.assertEquals(217, image.getWidth());
+			Assert.assertEquals(217, image.getHeight());
+			Assert.assertEquals(content, new QRBarcode().readImage(image));
+			int modules = new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, 0, 0,
+					EncoderSession.getHints(ErrorCorrectionLevel.M, 1)).getWidth();
+			double moduleSize = 217.0 / modules;
+			// the top row of the finder pattern is 7 modules wide
+			int y = (int) (moduleSize * 1.5);
+			int start = 0;
+			while ((image.getRGB(start, y) & 0xFF) >= 128) {
+				start++;
+			}
+			int end = start;
+			while ((image.getRGB(end, y) & 0xFF) < 128) {
+				end++;
+			}
+			Assert.assertEquals(moduleSize, start, 1);
+			Assert.assertEquals(7 * moduleSize, end - start, 1);
+		}
+	}
+	
+	@Test
+	public void testOverlayCache() throws Exception {
+		BufferedImage overlay = OverlayCache.get("/kreuz/CH-Kreuz_7mm.png", 7.0, 120.0);
+		long hits = OverlayCache.getHits();
+		Assert.assertSame(overlay, OverlayCache.get("/kreuz/CH-Kreuz_7mm.png", 7.0, 120.0));
+		Assert.assertEquals(hits + 1, OverlayCache.getHits());
+		Assert.assertEquals(33, overlay.getWidth());
+	}
+
+	@Test
+	public void testEncoderSession() throws Exception {
+		QRBarcode bc = new QRSwissBarcode();
+		byte[] first = bc.create(getContent(), "png");
+		Assert.assertArrayEquals(first, bc.create(getContent(), "png"));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		bc.write(getContent(), "png", os);
+		Assert.assertArrayEquals(first, os.toByteArray());
+		Assert.assertEquals(getContent(), bc.readImage(new ByteArrayInputStream(first)));
+
+		BufferedImage image = EncoderSession.get().getImage(217, 217, BufferedImage.TYPE_3BYTE_BGR);
+		Assert.assertSame(image, EncoderSession.get().getImage(217, 217, BufferedImage.TYPE_3BYTE_BGR));
+		Assert.assertNotSame(image, bc.createImage(getContent(), "png"));
+	}
+
+	@Test
+	public void testQRDecoder() throws Exception {
+		BufferedImage image = new QRSwissBarcode(false).createImage(getContent(), "png");
+		long fastHits = QRDecoder.Stage.FAST.getHitMetrics().getCount();
+		Assert.assertEquals(getContent(), QRDecoder.decode(image));
+		// clean images are decoded by the first stage
+		Assert.assertEquals(fastHits + 1, QRDecoder.Stage.FAST.getHitMetrics().getCount());
+
+		// the gray conversion supports all image types
+		for (int type : Arrays.asList(BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR)) {
+			BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+			converted.getGraphics().drawImage(image, 0, 0, null);
+			Assert.assertEquals(getContent(), new QRBarcode().readImage(converted));
+		}
+
+		// all stages are tried before giving up: the region only applies to page scans
+		Map<QRDecoder.Stage, Long> attempts = new EnumMap(QRDecoder.Stage.class);
+		for (QRDecoder.Stage stage : QRDecoder.Stage.values()) {
+			attempts.put(stage, stage.getMetrics().getCount());
+		}
+		try {
+			QRDecoder.decode(new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB));
+			Assert.fail("No QR code expected");
+		} catch (BarcodeException ex) {
+		}
+		for (QRDecoder.Stage stage : QRDecoder.Stage.values()) {
+			long expected = stage == QRDecoder.Stage.REGION ? 0 : 1;
+			Assert.assertEquals(attempts.get(stage) + expected, stage.getMetrics().getCount());
+		}
+
+		// tiny images are reported as BarcodeException as well
+		for (int size : Arrays.asList(1, 2, 3)) {
+			try {
+				new QRBarcode().readImage(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB));
+				Assert.fail("No QR code expected");
+			} catch (BarcodeException ex) {
+			}
+		}
+	}
+
+	@Test
+	public void testBarcodesZip() throws Exception {
+		List<String> input = new ArrayList();
+		for (int j = 0; j < 40; j++) {
+			input.add("content " + j);
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		CommonServicesAPI.getBarcodes(os, input);
+
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()));
+		QRBarcode bc = new QRBarcode();
+		for (int j = 0; j < input.size(); j++) {
+			ZipEntry entry = zip.getNextEntry();
+			Assert.assertEquals((j + 1) + ".png", entry.getName());
+			Assert.assertEquals(input.get(j), bc.readImage(ImageIO.read(zip)));
+		}
+		Assert.assertNull(zip.getNextEntry());
+	}
+
+	@Test
+	public void testImageCache() throws Exception {
+		IBarcode bc = new QRSwissBarcode();
+		String key = ImageCache.getKey(getContent(), "png", 46.0, "M", false);
+		Assert.assertEquals(key, ImageCache.getKey(getContent(), "png", 46.0, "M", false));
+		Assert.assertNotEquals(key, ImageCache.getKey(getContent(), "png", 46.0, "M", true));
+
+		long misses = ImageCache.getMisses();
+		long hits = ImageCache.getHits();
+		byte[] image = ImageCache.get(key, () -> bc.create(getContent(), "png"));
+		Assert.assertSame(image, ImageCache.get(key, () -> bc.create(getContent(), "png")));
+		Assert.assertEquals(misses + 1, ImageCache.getMisses());
+		Assert.assertEquals(hits + 1, ImageCache.getHits());
+
+		Response response = ImageCache.getResponse(null, "png", key, () -> bc.create(getContent(), "png"));
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals(key, response.getEntityTag().getValue());
+
+		// disk tier
+		File dir = new File("src/test/resources/generated/imagecache");
+		ImageCache.setDirectory(dir);
+		ImageCache.put(key, image);
+		ImageCache.clear();
+		long diskHits = ImageCache.getDiskHits();
+		Assert.assertArrayEquals(image, ImageCache.get(key, () -> null));
+		Assert.assertEquals(diskHits + 1, ImageCache.getDiskHits());
+		ImageCache.setDirectory(null);
+	}
+
+	@Test
+	public void testSwissBarCodeSVG() throws Exception {
+		String svg = new QRSwissBarcode().createSVG(getContent());
+		Assert.assertTrue(svg.contains("<svg"));
+		Assert.assertTrue(svg.contains("width=\"46mm\""));
+		Assert.assertEquals(1, svg.split("<path").length - 1);
+		Assert.assertTrue(svg.contains("<g transform="));
+		FileOutputStream fos = new FileOutputStream("src/test/resources/generated/testSwiss.svg");
+		fos.write(svg.getBytes("UTF-8"));
+		fos.close();
 	}
 	
 	public ContentBarcodeCH testContent() throws Exception {
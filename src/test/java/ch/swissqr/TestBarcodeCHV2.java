@@ -17,6 +17,7 @@ import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.IContent;
 import ch.swissqr.content.ch.Address;
 import ch.swissqr.content.ch.CreditorInformation;
+import ch.swissqr.content.ch.IAlternativeSchema;
 import ch.swissqr.content.ch.MapData;
 import ch.swissqr.content.ch.PaymentAmount;
 import ch.swissqr.content.ch.PaymentReference;
@@ -24,6 +25,7 @@ import ch.swissqr.content.ch.PaymentReference.ReferenceType;
 import ch.swissqr.content.ch.formats.CSVFormat;
 import ch.swissqr.content.ch.formats.JsonFormat;
 import ch.swissqr.content.ch.formats.QRStringFormatSwiss;
+import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.utils.StringUtils;
 
 /**
@@ -96,6 +98,83 @@ public class TestBarcodeCHV2 {
 
 	}
 
+	@Test
+	public void testStringMultipleRecords() throws Exception {
+		ContentBarcodeCH c = content();
+		String original = new QRStringFormatSwiss().write(Arrays.asList(c, c, c));
+
+		List<IContent> bc = new QRStringFormatSwiss().read(original);
+		Assert.assertEquals(3, bc.size());
+		Assert.assertEquals(original, new QRStringFormatSwiss().write(bc));
+	}
+
+	@Test(expected = BarcodeException.class)
+	public void testStringMissingField() throws Exception {
+		String original = new QRStringFormatSwiss().write(Arrays.asList(content()));
+		new QRStringFormatSwiss().parse(original.substring(0, original.indexOf("CHF")));
+	}
+
+	@Test
+	public void testStringParserReuse() throws Exception {
+		String original = new QRStringFormatSwiss().write(Arrays.asList(content()));
+		QRStringFormatSwiss format = new QRStringFormatSwiss();
+		for (int j = 0; j < 3; j++) {
+			Assert.assertEquals(original, format.parse(original).getContent());
+		}
+	}
+
+	@Test
+	public void testStringWriter() throws Exception {
+		ContentBarcodeCH c = content();
+		StringBuilder expected = new StringBuilder();
+		expected.append(c.getHeader());
+		expected.append(c.getCreditorInformation());
+		expected.append(c.getUltimateCreditor());
+		expected.append(c.getPaymentAmount());
+		expected.append(c.getDebitor());
+		expected.append(c.getPaymentReference());
+		for (IAlternativeSchema as : c.getAlternativeSchema()) {
+			expected.append(StringUtils.CRLF);
+			expected.append(as);
+		}
+
+		QRStringFormatSwiss format = new QRStringFormatSwiss();
+		Assert.assertEquals(expected.toString(), format.write(Arrays.asList(c)));
+		Assert.assertEquals(expected.toString(), c.getContent());
+		// the buffer is reused
+		Assert.assertEquals(expected.toString() + expected, format.write(Arrays.asList(c, c)));
+		Assert.assertEquals(expected.toString(), format.write(Arrays.asList(c)));
+	}
+
+	@Test
+	public void testValidationPlan() throws Exception {
+		ContentBarcodeCH valid = content();
+		valid.getCreditorInformation().iban("CH4431999123000889012");
+		valid.getPaymentReference().reference("210000000003139471430009017");
+		ContentBarcodeCH invalid = content();
+		invalid.getPaymentReference().reference("210000000003139471430009017");
+		invalid.getCreditorInformation().iban("DE0031999123000889012");
+		invalid.getDebitor().city("");
+
+		Assert.assertTrue(valid.isOK());
+		Assert.assertTrue(valid.check().isEmpty());
+		Assert.assertFalse(invalid.isOK());
+
+		List<ch.swissqr.utils.Error> errors = invalid.check();
+		// invalid country and invalid check digit
+		Assert.assertEquals(3, errors.size());
+		Assert.assertEquals("iban", errors.get(0).getFieldName());
+		Assert.assertEquals("iban", errors.get(1).getFieldName());
+		Assert.assertEquals("DebitorCity", errors.get(2).getFieldName());
+
+		boolean[] result = ContentBarcodeCH.VALIDATION.isValid(new ContentBarcodeCH[] { valid, invalid, valid });
+		Assert.assertTrue(Arrays.equals(new boolean[] { true, false, true }, result));
+
+		errors = ContentBarcodeCH.VALIDATION.check(Arrays.asList(valid, invalid));
+		Assert.assertEquals(3, errors.size());
+		Assert.assertEquals("2", errors.get(0).getFileName());
+	}
+
 	@Test
 	public void testCSV() throws Exception {
 		ContentBarcodeCH c = content();
@@ -0,0 +1,85 @@
+package ch.swissqr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.swissqr.content.ContentBarcodeCH;
+import ch.swissqr.content.ch.Address;
+import ch.swissqr.content.ch.Checksums;
+import ch.swissqr.content.ch.CreditorInformation;
+import ch.swissqr.content.ch.PaymentReference;
+import ch.swissqr.content.ch.PaymentReference.ReferenceType;
+
+/**
+ * Tests for the IBAN, QR-IBAN, QR reference and creditor reference check
+ * digits
+ * 
+ * @author pschatzmann
+ *
+ */
+public class TestChecksums {
+
+	@Test
+	public void testIban() {
+		Assert.assertTrue(Checksums.isValidIban("CH9300762011623852957"));
+		Assert.assertTrue(Checksums.isValidIban("CH93 0076 2011 6238 5295 7"));
+		Assert.assertTrue(Checksums.isValidIban("GB82WEST12345698765432"));
+		Assert.assertTrue(Checksums.isValidIban("LI21088100002324013AA"));
+		Assert.assertFalse(Checksums.isValidIban("CH9300762011623852958"));
+		Assert.assertFalse(Checksums.isValidIban("IBAN12345677"));
+		Assert.assertFalse(Checksums.isValidIban("CH93007620116238529$7"));
+		Assert.assertFalse(Checksums.isValidIban(""));
+		Assert.assertFalse(Checksums.isValidIban(null));
+	}
+
+	@Test
+	public void testQrIban() {
+		Assert.assertTrue(Checksums.isQrIban("CH4431999123000889012"));
+		Assert.assertTrue(Checksums.isQrIban("CH44 3199 9123 0008 8901 2"));
+		Assert.assertFalse(Checksums.isQrIban("CH9300762011623852957"));
+		Assert.assertFalse(Checksums.isQrIban("CH4431999123000889013"));
+		Assert.assertFalse(Checksums.isQrIban("GB82WEST12345698765432"));
+	}
+
+	@Test
+	public void testQrReference() {
+		Assert.assertTrue(Checksums.isValidQrReference("210000000003139471430009017"));
+		Assert.assertTrue(Checksums.isValidQrReference("21 00000 00003 13947 14300 09017"));
+		Assert.assertFalse(Checksums.isValidQrReference("210000000003139471430009018"));
+		Assert.assertFalse(Checksums.isValidQrReference("21000000000313947143000901"));
+		Assert.assertFalse(Checksums.isValidQrReference("21000000000313947143000901A"));
+		Assert.assertEquals(7, Checksums.getQrReferenceCheckDigit("21000000000313947143000901"));
+	}
+
+	@Test
+	public void testCreditorReference() {
+		Assert.assertTrue(Checksums.isValidCreditorReference("RF18539007547034"));
+		Assert.assertTrue(Checksums.isValidCreditorReference("RF18 5390 0754 7034"));
+		Assert.assertFalse(Checksums.isValidCreditorReference("RF19539007547034"));
+		Assert.assertFalse(Checksums.isValidCreditorReference("XX18539007547034"));
+		Assert.assertEquals(18, Checksums.getCreditorReferenceCheckDigits("539007547034"));
+	}
+
+	@Test
+	public void testContentCheck() {
+		ContentBarcodeCH content = new ContentBarcodeCH()
+				.creditor(new CreditorInformation().iban("CH4431999123000889012")
+						.creditorAddress(new Address().structured("Robert Schneider AG", "Rue du Lac", "1268", "2501", "Biel", "CH")))
+				.paymentReference(new PaymentReference().referenceType(ReferenceType.QRR).reference("210000000003139471430009017"));
+		Assert.assertTrue(content.isOK());
+
+		// QR reference with a check digit error
+		content.getPaymentReference().reference("210000000003139471430009018");
+		Assert.assertFalse(content.isOK());
+		Assert.assertEquals("reference", content.check().get(0).getFieldName());
+
+		// a QR-IBAN requires a QR reference
+		content.paymentReference(new PaymentReference().referenceType(ReferenceType.SCOR).reference("RF18539007547034"));
+		Assert.assertFalse(content.isOK());
+		Assert.assertEquals("referenceType", content.check().get(0).getFieldName());
+
+		content.getCreditorInformation().iban("CH9300762011623852957");
+		Assert.assertTrue(content.isOK());
+	}
+
+}
@@ -1,11 +1,16 @@
 package ch.swissqr;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 import org.junit.Assert;
@@ -15,19 +20,26 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 
 import ch.swissqr.content.ContentBarcodeCH;
+import ch.swissqr.content.ContentString;
 import ch.swissqr.content.IContent;
 import ch.swissqr.content.ch.Address;
 import ch.swissqr.content.ch.AlternativeSchema;
 import ch.swissqr.content.ch.CreditorInformation;
 import ch.swissqr.content.ch.PaymentAmount;
 import ch.swissqr.content.ch.PaymentReference;
+import ch.swissqr.content.ch.formats.AnyFormat;
 import ch.swissqr.content.ch.formats.CSVFormat;
+import ch.swissqr.content.ch.formats.CSVStreamReader;
+import ch.swissqr.content.ch.formats.ContentRecord;
 import ch.swissqr.content.ch.formats.FormatException;
 import ch.swissqr.content.ch.formats.JsonFormat;
+import ch.swissqr.content.ch.formats.JsonStreamReader;
 import ch.swissqr.content.ch.formats.QRStringFormatSwiss;
 import ch.swissqr.content.ch.formats.XmlFormat;
-//import ch.swissqr.content.ch.formats.XmlFormat;
+import ch.swissqr.content.ch.formats.XmlContentReader;
+import ch.swissqr.content.ch.formats.XmlContentWriter;
 import ch.swissqr.errors.BarcodeException;
+import ch.swissqr.service.web.BulkInput;
 import ch.swissqr.utils.StringUtils;
 
 /**
@@ -57,25 +69,83 @@ public class TestDataFormatsContentBarcodeCH {
 		Assert.assertTrue(((ContentBarcodeCH)bc.get(0)).getCreditorInformation().getCreditorAddress().isDefined());
 		Assert.assertTrue(((ContentBarcodeCH)bc.get(0)).getDebitor().isDefined());		
 	}
+
+	@Test
+	public void testReadJsonStream() throws Exception {
+		List<IContent> list = Arrays.asList(content(), new ContentString("test"), content());
+		String json = new JsonFormat().write(list);
+		json = json.replace("[{", "[{\"contentType\":\"Unknown\"},{");
+
+		try (BulkInput input = BulkInput.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+			Assert.assertEquals(3, input.count(IContent.class));
+			Assert.assertEquals(2, input.count(ContentBarcodeCH.class));
+			int count = 0;
+			for (ContentBarcodeCH bc : input.get(ContentBarcodeCH.class, true)) {
+				Assert.assertTrue(bc.isTest());
+				Assert.assertEquals("IBAN12345677", bc.getCreditorInformation().getIban());
+				count++;
+			}
+			Assert.assertEquals(2, count);
+		}
+
+		try (JsonStreamReader reader = new JsonStreamReader(new ByteArrayInputStream("[{\"contentType\":\"\"}]".getBytes()))) {
+			reader.read();
+			Assert.fail("contentType is missing");
+		} catch (FormatException ex) {
+			Assert.assertTrue(ex.getMessage().contains("contentType"));
+		}
+	}
 		
-//	@Test
-//	public void testWriteXML() throws FormatException {
-//		ContentBarcodeCH c = content();
-//		String jsonInString = new XmlFormat().write(Arrays.asList(c));
-//		System.out.println(jsonInString);
-//
-//	}
-//	
-//	@Test
-//	public void testReadXML() throws FormatException, BarcodeException {
-//		InputStream is = this.getClass().getResourceAsStream("/formats/ch.xml");
-//		Scanner s = new Scanner(is).useDelimiter("\\A");
-//		String xmlString = s.hasNext() ? s.next() : "";
-//		List<IContent> bc = new XmlFormat().read(xmlString);
-//
-//		Assert.assertTrue(((ContentBarcodeCH)bc.get(0)).getCreditorInformation().getCreditorAddress().isDefined());
-//		Assert.assertTrue(((ContentBarcodeCH)bc.get(0)).getDebitor().isDefined());				
-//	}
+	@Test
+	public void testWriteXML() throws FormatException, BarcodeException, IOException {
+		// an empty address is read back as structured address
+		ContentBarcodeCH c = content().ultimateCreditor(new Address("Max Muster, Hauptstrasse 1, 8000 Zuerich"));
+		String xml = new XmlFormat().write(Arrays.asList(c));
+
+		try (XmlContentReader reader = new XmlContentReader(new StringReader(xml))) {
+			Assert.assertTrue(reader.hasNext());
+			IContent result = reader.next();
+			Assert.assertTrue(result instanceof ContentBarcodeCH);
+			Assert.assertEquals(c.getContent(), result.getContent());
+			Assert.assertFalse(reader.hasNext());
+		}
+	}
+	
+	@Test
+	public void testReadXML() throws FormatException, BarcodeException {
+		InputStream is = this.getClass().getResourceAsStream("/formats/ch.xml");
+		Scanner s = new Scanner(is).useDelimiter("\\A");
+		String xmlString = s.hasNext() ? s.next() : "";
+		List<IContent> bc = new XmlFormat().read(xmlString);
+
+		Assert.assertTrue(((ContentBarcodeCH)bc.get(0)).getCreditorInformation().getCreditorAddress().isDefined());
+		Assert.assertTrue(((ContentBarcodeCH)bc.get(0)).getDebitor().isDefined());				
+	}
+
+	@Test
+	public void testXMLStream() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (XmlContentWriter writer = new XmlContentWriter(os)) {
+			for (int j = 0; j < 100; j++) {
+				writer.write(j % 2 == 0 ? content() : new ContentString("test " + j));
+			}
+		}
+
+		try (BulkInput input = BulkInput.read(new ByteArrayInputStream(os.toByteArray()))) {
+			Assert.assertEquals(100, input.count(IContent.class));
+			Assert.assertEquals(50, input.count(ContentBarcodeCH.class));
+			int count = 0;
+			for (IContent c : input.get(IContent.class, false)) {
+				if (count % 2 == 0) {
+					Assert.assertEquals("IBAN12345677", ((ContentBarcodeCH) c).getCreditorInformation().getIban());
+				} else {
+					Assert.assertEquals("test " + count, c.getContent());
+				}
+				count++;
+			}
+			Assert.assertEquals(100, count);
+		}
+	}
 	
 	@Test
 	public void testWriteText() throws FormatException {
@@ -116,6 +186,51 @@ public class TestDataFormatsContentBarcodeCH {
 		Assert.assertEquals(1, content.size());
 	}
 
+	@Test
+	public void testReadCSVStream() throws Exception {
+		InputStream is = this.getClass().getResourceAsStream("/formats/ch.csv");
+		Scanner s = new Scanner(is).useDelimiter("\\A");
+		String[] lines = s.next().trim().split("\r?\n");
+		StringBuilder csv = new StringBuilder(lines[0]).append("\n");
+		for (int j = 0; j < 1000; j++) {
+			csv.append(j == 500 ? lines[1].replace("ContentBarcodeCH", "Unknown") : lines[1]).append("\n");
+		}
+
+		try (CSVStreamReader reader = new CSVStreamReader(new StringReader(csv.toString()))) {
+			List<ContentRecord> records = reader.stream(true, true).collect(Collectors.toList());
+			Assert.assertEquals(1000, records.size());
+			for (int j = 0; j < records.size(); j++) {
+				Assert.assertEquals(j + 2, records.get(j).getLineNumber());
+				Assert.assertEquals(j != 500, records.get(j).getContent() != null);
+			}
+			Assert.assertEquals("502", records.get(500).getErrors().get(0).getFileName());
+		}
+
+		try (BulkInput input = BulkInput.read(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)))) {
+			Assert.assertEquals(999, input.count(ContentBarcodeCH.class));
+			int count = 0;
+			for (ContentBarcodeCH bc : input.get(ContentBarcodeCH.class, false)) {
+				Assert.assertEquals("IBAN12345677", bc.getCreditorInformation().getIban());
+				count++;
+			}
+			Assert.assertEquals(999, count);
+			Assert.assertTrue(input.check().stream().anyMatch(error -> "502".equals(error.getFileName())));
+		}
+	}
+
+	@Test
+	public void testReadCSVEscapedLines() throws Exception {
+		InputStream is = this.getClass().getResourceAsStream("/barcodesCH.csv");
+		Scanner s = new Scanner(is, "UTF-8").useDelimiter("\\A");
+		String csv = s.next().trim().replaceAll("\r?\n", "\\\\n");
+		Assert.assertFalse(csv.contains("\n"));
+		int expected = AnyFormat.read(csv).size();
+		Assert.assertEquals(8, expected);
+		try (BulkInput input = BulkInput.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+			Assert.assertEquals(expected, input.count(ContentBarcodeCH.class));
+		}
+	}
+
 	@Test
 	public void testCRLF1() throws FormatException, IOException, ParseException {
 		ContentBarcodeCH c = new ContentBarcodeCH()
@@ -1,25 +1,59 @@
 package ch.swissqr;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipInputStream;
+
+import javax.imageio.ImageIO;
 
 import org.apache.log4j.Logger;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.multipdf.LayerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import ch.swissqr.barcode.QRBarcode;
+import ch.swissqr.barcode.QRDecoder;
+import ch.swissqr.barcode.QRSwissBarcode;
 import ch.swissqr.content.ContentBarcodeCH;
 import ch.swissqr.content.ch.Address;
 import ch.swissqr.content.ch.CreditorInformation;
 import ch.swissqr.content.ch.PaymentAmount;
 import ch.swissqr.content.ch.PaymentReference;
 import ch.swissqr.content.ch.PaymentReference.ReferenceType;
+import ch.swissqr.errors.BarcodeException;
 import ch.swissqr.paymentslip.PaymentSlipPDF;
+import ch.swissqr.paymentslip.PaymentSlipTemplate;
+import ch.swissqr.paymentslip.PaymentSlipWriter;
+import ch.swissqr.paymentslip.TextFitter;
 import ch.swissqr.pdf.Document;
+import ch.swissqr.pdf.PageBarcode;
+import ch.swissqr.pdf.RasterOptions;
+import ch.swissqr.service.web.CommonServicesAPI;
 import ch.swissqr.pdf.parsing.PDFContent;
 import ch.swissqr.pdf.parsing.Text;
 
@@ -107,6 +141,276 @@ public class TestPDF {
 	}
 
 
+	@Test
+	public void testCreatePaymentSlipVector() throws Exception {
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		PaymentSlipPDF ps = new PaymentSlipPDF();
+		ps.setVectorBarcode(true);
+		ps.print(bc, "en", PaymentSlipPDF.Format.A4, true, true);
+		ps.save(new File("src/test/resources/generated/test_vector.pdf"));
+
+		BufferedImage page = new PDFRenderer(ps.getDocument()).renderImageWithDPI(0, 200, ImageType.GRAY);
+		Assert.assertEquals(bc.getContent(), new QRBarcode().readImage(page));
+		ps.close();
+	}
+
+	@Test
+	public void testPaymentSlipsZip() throws Exception {
+		List<ContentBarcodeCH> input = new ArrayList();
+		for (int j = 1; j <= 8; j++) {
+			ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+			bc.getPaymentAmount().amount(new BigDecimal(j));
+			input.add(bc);
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		CommonServicesAPI.getPaymentSlipStreamingOutput(input).write(os);
+
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()));
+		for (int j = 1; j <= input.size(); j++) {
+			Assert.assertEquals(j + ".pdf", zip.getNextEntry().getName());
+			Document doc = new Document(zip);
+			Assert.assertEquals(j, doc.getSwissBarcodeContent().get(0).getPaymentAmount().getAmount().intValue());
+		}
+		Assert.assertNull(zip.getNextEntry());
+		Assert.assertTrue(CommonServicesAPI.getPaymentSlipMetrics().getCount() >= input.size());
+	}
+
+	@Test
+	public void testStreamingOutput() throws Exception {
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		PaymentSlipPDF ps = new PaymentSlipPDF(bc, "de", PaymentSlipPDF.Format.A4, true, true);
+		boolean[] closed = new boolean[1];
+		ByteArrayOutputStream os = new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		CommonServicesAPI.getStreamingOutput(ps, "pdf").write(os);
+
+		// the response stream stays open and the slip is released
+		Assert.assertFalse(closed[0]);
+		Assert.assertTrue(ps.getDocument().getDocument().isClosed());
+		Document doc = new Document(new ByteArrayInputStream(os.toByteArray()));
+		Assert.assertEquals(1, doc.getSwissBarcodeContent().size());
+	}
+
+	@Test
+	public void testRasterOptions() throws Exception {
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		PaymentSlipPDF ps = new PaymentSlipPDF(bc, "de", PaymentSlipPDF.Format.A4, true, true);
+		PDRectangle cropBox = ps.getDocument().getPage(0).getCropBox();
+
+		BufferedImage page = ps.renderImage(new RasterOptions().dpi(150).colors("gray"));
+		Assert.assertEquals(BufferedImage.TYPE_BYTE_GRAY, page.getType());
+		Assert.assertEquals(cropBox.getWidth() / 72 * 150, page.getWidth(), 1);
+
+		BufferedImage bitonal = ps.renderImage(new RasterOptions().dpi(150).colors("bitonal"));
+		Assert.assertEquals(BufferedImage.TYPE_BYTE_BINARY, bitonal.getType());
+
+		// only the QR code is rendered and the page is not changed
+		RasterOptions options = CommonServicesAPI.getRasterOptions(PaymentSlipPDF.Format.A4, "300", "bitonal", "qr");
+		BufferedImage qr = ps.renderImage(options);
+		Assert.assertEquals(ps.getBarcodeRegion().getWidth() / 72 * 300, qr.getWidth(), 1);
+		Assert.assertEquals(bc.getContent(), new QRBarcode().readImage(qr));
+		Assert.assertEquals(cropBox.getWidth(), ps.getDocument().getPage(0).getCropBox().getWidth(), 0.01);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		CommonServicesAPI.getStreamingOutput(ps, "png", options).write(os);
+		Assert.assertEquals(qr.getWidth(), ImageIO.read(new ByteArrayInputStream(os.toByteArray())).getWidth());
+
+		// invalid parameters are reported as BarcodeException
+		for (String[] invalid : new String[][] { { "abc", "gray", "page" }, { "1000", "gray", "page" },
+				{ "300", "cmyk", "page" }, { "300", "gray", "receipt" } }) {
+			try {
+				CommonServicesAPI.getRasterOptions(PaymentSlipPDF.Format.A4, invalid[0], invalid[1], invalid[2]);
+				Assert.fail(Arrays.toString(invalid));
+			} catch (BarcodeException ex) {
+			}
+		}
+	}
+
+	@Test
+	public void testPaymentSlipTemplate() throws Exception {
+		Assert.assertSame(PaymentSlipTemplate.get(PaymentSlipPDF.Format.A4, "de"), PaymentSlipTemplate.get(PaymentSlipPDF.Format.A4, "de"));
+		Assert.assertNotSame(PaymentSlipTemplate.get(PaymentSlipPDF.Format.A4, "de"), PaymentSlipTemplate.get(PaymentSlipPDF.Format.A4, "fr"));
+
+		// empty amount and debitor boxes are printed on the receipt and the payment part
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		bc.getDebitor().name((String)null);
+		bc.getPaymentAmount().amount((BigDecimal)null);
+		PaymentSlipPDF ps = new PaymentSlipPDF(bc, "de", PaymentSlipPDF.Format.A4, true, true);
+		Document doc = new Document(new ByteArrayInputStream(ps.getBytes("pdf")));
+		ps.close();
+
+		// scissors, amount box, debitor box and barcode
+		Assert.assertEquals(4, doc.getImages().size());
+		Assert.assertTrue(doc.getText().contains("Zahlteil"));
+		Assert.assertEquals(1, doc.getSwissBarcodeContent().size());
+		new PDFRenderer(doc.getDocument()).renderImage(0);
+	}
+
+	@Test
+	public void testPaymentSlipWriter() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		PaymentSlipWriter writer = new PaymentSlipWriter(os);
+		int count = 20;
+		for (int j = 1; j <= count; j++) {
+			ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+			// every second slip has an empty amount box
+			bc.getPaymentAmount().amount(j % 2 == 0 ? null : new BigDecimal(j));
+			writer.add(bc, "en", PaymentSlipPDF.Format.A4, true, true);
+			// the pages are written immediately
+			Assert.assertTrue(os.size() > 0);
+		}
+		writer.close();
+		Assert.assertEquals(count, writer.getPageCount());
+		FileOutputStream fos = new FileOutputStream("src/test/resources/generated/multiple.pdf");
+		fos.write(os.toByteArray());
+		fos.close();
+
+		Document doc = new Document(new ByteArrayInputStream(os.toByteArray()));
+		Assert.assertEquals(count, doc.getDocument().getNumberOfPages());
+		// scissors and amount box are shared by all pages
+		Assert.assertEquals(count + count / 2, doc.getImages().size());
+		Set<COSBase> distinct = Collections.newSetFromMap(new IdentityHashMap());
+		for (PDPage page : doc.getDocument().getPages()) {
+			for (COSName name : page.getResources().getXObjectNames()) {
+				distinct.add(page.getResources().getXObject(name).getCOSObject());
+			}
+		}
+		Assert.assertEquals(2, distinct.size());
+		Assert.assertTrue(doc.getText().contains("Receipt"));
+
+		PDFRenderer renderer = new PDFRenderer(doc.getDocument());
+		for (int page : Arrays.asList(0, count - 1)) {
+			String str = new QRBarcode().readImage(renderer.renderImageWithDPI(page, 200, ImageType.GRAY));
+			ContentBarcodeCH bc = new ContentBarcodeCH(str);
+			Assert.assertEquals(page % 2 == 0 ? Integer.valueOf(page + 1) : null,
+					bc.getPaymentAmount().getAmount() == null ? null : bc.getPaymentAmount().getAmount().intValue());
+		}
+		doc.close();
+	}
+
+	@Test
+	public void testPaymentSlipWriterAbort() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		PaymentSlipWriter writer = new PaymentSlipWriter(os);
+		writer.abort();
+		// nothing has been written
+		Assert.assertEquals(0, os.size());
+
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		writer = new PaymentSlipWriter(os);
+		writer.add(bc, "en", PaymentSlipPDF.Format.A4, true, true);
+		writer.abort();
+		writer.close();
+		Assert.assertTrue(os.size() > 0);
+		// the page tree and the trailer are missing
+		String pdf = new String(os.toByteArray(), "ISO-8859-1");
+		Assert.assertFalse(pdf.contains("trailer"));
+		Assert.assertFalse(pdf.contains("%%EOF"));
+	}
+
+	@Test
+	public void testAddPaymentSlips() throws Exception {
+		Document doc = new Document(new File("src/test/resources/invoice-sample.pdf"));
+		int pages = doc.getDocument().getNumberOfPages();
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		doc.addPaymentSlips(Arrays.asList(bc, bc, bc), "en");
+		Assert.assertEquals(pages + 3, doc.getDocument().getNumberOfPages());
+		Assert.assertEquals(3, doc.getSwissBarcodeContent().size());
+		doc.close();
+	}
+
+	@Test
+	public void testBarcodeScanner() throws Exception {
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		PaymentSlipPDF image = new PaymentSlipPDF(bc, "de", PaymentSlipPDF.Format.A4, true, true);
+		PaymentSlipPDF vector = new PaymentSlipPDF();
+		vector.setVectorBarcode(true);
+		vector.print(bc, "de", PaymentSlipPDF.Format.A4, true, true);
+
+		// image, vector graphics, image in a form XObject and an empty page
+		Document doc = new Document();
+		doc.addPDF(image.getDocument());
+		doc.addPDF(vector.getDocument());
+		PDPage formPage = new PDPage(PDRectangle.A4);
+		doc.getDocument().addPage(formPage);
+		PDFormXObject form = new LayerUtility(doc.getDocument()).importPageAsForm(image.getDocument(), 0);
+		PDPageContentStream cs = new PDPageContentStream(doc.getDocument(), formPage);
+		cs.drawForm(form);
+		cs.close();
+		doc.getDocument().addPage(new PDPage(PDRectangle.A4));
+
+		List<PageBarcode> barcodes = doc.getBarcodes();
+		Assert.assertEquals(3, barcodes.size());
+		PDRectangle region = image.getBarcodeRegion();
+		for (int j = 0; j < 3; j++) {
+			PageBarcode barcode = barcodes.get(j);
+			Assert.assertEquals(j, barcode.getPage());
+			Assert.assertEquals(j == 1, barcode.isVector());
+			Assert.assertEquals(bc.getContent(), barcode.getContent());
+			Assert.assertTrue(barcode.getArea().getWidth() > region.getWidth() * 0.8);
+			Assert.assertTrue(region.contains(barcode.getArea().getLowerLeftX() + 1, barcode.getArea().getLowerLeftY() + 1));
+		}
+		Assert.assertEquals(3, doc.getBarcodeStrings().size());
+		image.close();
+		vector.close();
+		doc.close();
+	}
+
+	@Test
+	public void testDecodePageScan() throws Exception {
+		ContentBarcodeCH bc = new ContentBarcodeCH(new TestBarcode().getContent());
+		PaymentSlipPDF ps = new PaymentSlipPDF(bc, "de", PaymentSlipPDF.Format.A4, true, true);
+		BufferedImage scan = ps.renderImage(new RasterOptions().dpi(150));
+
+		// the QR code lies in the expected region of the payment part
+		Rectangle region = QRDecoder.getRegion(scan.getWidth(), scan.getHeight());
+		PDRectangle qr = ps.getBarcodeRegion();
+		float scale = 150f / 72;
+		Assert.assertTrue(region.contains(qr.getLowerLeftX() * scale, scan.getHeight() - qr.getUpperRightY() * scale,
+				qr.getWidth() * scale, qr.getHeight() * scale));
+		Assert.assertNull(QRDecoder.getRegion(600, 600));
+
+		long hits = QRDecoder.Stage.REGION.getHitMetrics().getCount();
+		Assert.assertEquals(bc.getContent(), new QRBarcode().readImage(scan));
+		Assert.assertEquals(hits + 1, QRDecoder.Stage.REGION.getHitMetrics().getCount());
+
+		// QR codes outside of the payment part are found on the full page
+		BufferedImage page = new BufferedImage(scan.getWidth(), scan.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = page.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, page.getWidth(), page.getHeight());
+		g.drawImage(new QRSwissBarcode(false).createImage(bc.getContent(), "png"), 100, 100, null);
+		g.dispose();
+		long attempts = QRDecoder.Stage.REGION.getMetrics().getCount();
+		Assert.assertEquals(bc.getContent(), new QRBarcode().readImage(page));
+		Assert.assertEquals(attempts + 1, QRDecoder.Stage.REGION.getMetrics().getCount());
+		Assert.assertEquals(hits + 1, QRDecoder.Stage.REGION.getHitMetrics().getCount());
+		ps.close();
+	}
+
+	@Test
+	public void testTextFitter() throws Exception {
+		PDFont font = PDType1Font.HELVETICA;
+		TextFitter fitter = TextFitter.get(font);
+		Assert.assertSame(fitter, TextFitter.get(font));
+
+		String str = "Zahlung f\u00fcr Rechnung Nr. 123 / Bestellung \u20ac";
+		Assert.assertEquals(font.getStringWidth(str), fitter.getWidth(str), 0.0001);
+		float width = font.getStringWidth("Zahlung f\u00fcr");
+		Assert.assertEquals("Zahlung f\u00fcr", fitter.limit(str, width));
+		Assert.assertEquals("Zahlung f\u00fc", fitter.limit(str, width - 1));
+		Assert.assertEquals(str, fitter.limit(str, 100000));
+
+		Assert.assertEquals(Arrays.asList("Zahlung f\u00fcr", "Rechnung Nr.", "123 /", "Bestellung \u20ac"), fitter.split(str, font.getStringWidth("Rechnung Nr. 1")));
+		// words which are longer than the line are split
+		Assert.assertEquals(Arrays.asList("Rechn", "ung"), fitter.split("Rechnung", font.getStringWidth("Rechn")));
+		Assert.assertTrue(fitter.split("", 1000).isEmpty());
+	}
+
 	@Test
 	public void testReadBarcodeString() throws Exception {
 		Document doc = new Document(new File("src/test/resources/test_en.pdf"));
@@ -0,0 +1,164 @@
+package ch.swissqr;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.swissqr.content.ch.Checksums;
+import ch.swissqr.content.ch.PaymentReference;
+import ch.swissqr.content.ch.PaymentReference.ReferenceType;
+import ch.swissqr.content.ch.ReferenceGenerator;
+import ch.swissqr.errors.BarcodeException;
+
+/**
+ * Tests for the generation of QR references and creditor references
+ * 
+ * @author pschatzmann
+ *
+ */
+public class TestReferenceGenerator {
+
+	@Test
+	public void testQRR() throws Exception {
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.QRR, "210000000003139471430", 901);
+		Assert.assertEquals("210000000003139471430009017", generator.create(901));
+
+		List<String> references = generator.next(100);
+		Assert.assertEquals(100, references.size());
+		Assert.assertEquals("210000000003139471430009017", references.get(0));
+		for (String reference : references) {
+			Assert.assertTrue(reference, Checksums.isValidQrReference(reference));
+		}
+		Assert.assertEquals(1001, generator.getNextSequence());
+	}
+
+	@Test
+	public void testSCOR() throws Exception {
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.SCOR, "5390075", 47034);
+		Assert.assertEquals("RF18539007547034", generator.next());
+		for (String reference : generator.next(100)) {
+			Assert.assertTrue(reference, Checksums.isValidCreditorReference(reference));
+		}
+		PaymentReference reference = new PaymentReference().reference(generator);
+		Assert.assertEquals(ReferenceType.SCOR, reference.getReferenceType());
+		Assert.assertTrue(PaymentReference.VALIDATION.isValid(reference));
+	}
+
+	@Test
+	public void testInvalid() throws Exception {
+		try {
+			new ReferenceGenerator(ReferenceType.QRR, "12345678901234567890123456", 0);
+			Assert.fail();
+		} catch (BarcodeException ex) {
+		}
+		try {
+			new ReferenceGenerator(ReferenceType.QRR, "ABC", 0);
+			Assert.fail();
+		} catch (BarcodeException ex) {
+		}
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.QRR, "1234567890123456789012345", 8, 1);
+		generator.next();
+		generator.next();
+		try {
+			generator.next();
+			Assert.fail();
+		} catch (BarcodeException ex) {
+		}
+	}
+
+	@Test
+	public void testEndOfRange() throws Exception {
+		// default block size: the last block contains only the remaining numbers
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.QRR, "123456789012345678901234", 0);
+		Set<String> all = new HashSet();
+		for (int j = 0; j < 100; j++) {
+			all.add(generator.next());
+		}
+		Assert.assertEquals(100, all.size());
+		try {
+			generator.next();
+			Assert.fail();
+		} catch (BarcodeException ex) {
+		}
+
+		generator = new ReferenceGenerator(ReferenceType.QRR, "1234567890123456789012", 9500);
+		Assert.assertEquals("1234567890123456789012", generator.next().substring(0, 22));
+		for (int j = 1; j < 500; j++) {
+			generator.next();
+		}
+		Assert.assertEquals(10000, generator.getNextSequence());
+
+		// a bulk request needs the whole range and does not move the counter
+		generator = new ReferenceGenerator(ReferenceType.QRR, "1234567890123456789012", 9990);
+		try {
+			generator.next(11);
+			Assert.fail();
+		} catch (BarcodeException ex) {
+		}
+		Assert.assertEquals(9990, generator.getNextSequence());
+		Assert.assertEquals(10, generator.next(10).size());
+	}
+
+	@Test
+	public void testInvalidCount() throws Exception {
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.QRR, "210000000003139471430", 100);
+		List<String> references = generator.next(3);
+		for (int count : new int[] { 0, -2 }) {
+			try {
+				generator.next(count);
+				Assert.fail();
+			} catch (BarcodeException ex) {
+			}
+		}
+		// the counter has not been moved back
+		Assert.assertEquals(103, generator.getNextSequence());
+		Assert.assertFalse(references.contains(generator.next(1).get(0)));
+	}
+
+	@Test
+	public void testLargestRange() throws Exception {
+		// 19 digits for the sequence number: the end of the range must not overflow
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.SCOR, "AB", Long.MAX_VALUE - 3, 1000);
+		Set<String> all = new HashSet();
+		for (int j = 0; j < 3; j++) {
+			all.add(generator.next());
+		}
+		Assert.assertEquals(3, all.size());
+		try {
+			generator.next();
+			Assert.fail();
+		} catch (BarcodeException ex) {
+		}
+		Assert.assertEquals(Long.MAX_VALUE, generator.getNextSequence());
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		ReferenceGenerator generator = new ReferenceGenerator(ReferenceType.QRR, "123456", 0, 100);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<List<String>>> futures = new ArrayList();
+		for (int t = 0; t < 8; t++) {
+			futures.add(executor.submit(() -> {
+				List<String> result = new ArrayList();
+				for (int j = 0; j < 10000; j++) {
+					result.add(generator.next());
+				}
+				return result;
+			}));
+		}
+		Set<String> all = new HashSet();
+		for (Future<List<String>> future : futures) {
+			all.addAll(future.get());
+		}
+		executor.shutdown();
+		Assert.assertEquals(80000, all.size());
+	}
+
+}
@@ -0,0 +1,71 @@
+package ch.swissqr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.swissqr.utils.WorkerPool;
+
+/**
+ * Tests for the ordered parallel processing
+ *
+ * @author pschatzmann
+ *
+ */
+public class TestWorkerPool {
+
+	/**
+	 * Result which records if it has been released
+	 */
+	private static class Resource implements AutoCloseable {
+		private boolean closed;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		List<Integer> input = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+		List<Integer> result = new ArrayList();
+		int count = WorkerPool.process(input, 4, (number, index) -> number * 2, result::add);
+		Assert.assertEquals(100, count);
+		Assert.assertEquals(input.stream().map(number -> number * 2).collect(Collectors.toList()), result);
+	}
+
+	@Test
+	public void testReleaseOnError() throws Exception {
+		List<Integer> input = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+		List<Resource> created = Collections.synchronizedList(new ArrayList());
+		List<Resource> written = new ArrayList();
+		try {
+			WorkerPool.process(input, 4, (number, index) -> {
+				Resource resource = new Resource();
+				created.add(resource);
+				return resource;
+			}, resource -> {
+				written.add(resource);
+				resource.close();
+				if (written.size() == 2) {
+					throw new IOException("disconnected");
+				}
+			});
+			Assert.fail();
+		} catch (IOException ex) {
+			Assert.assertEquals("disconnected", ex.getMessage());
+		}
+		// the results which have not been written are released as well
+		for (Resource resource : created) {
+			Assert.assertTrue(resource.closed);
+		}
+	}
+
+}
@@ -4,12 +4,24 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import ch.swissqr.barcode.BitMatrixRenderer;
+import ch.swissqr.barcode.PngEncoder;
+import ch.swissqr.barcode.QRBarcode;
+import ch.swissqr.barcode.QRSwissBarcode;
+
 /**
  * Test for PNG imgage file format
  * 
@@ -51,4 +63,61 @@ public class TestWritePng {
 		ImageIO.write(bufferedImage, "png", file);
 	}
 
+	@Test
+	public void testPngEncoder() throws Exception {
+		String content = new TestBarcode().getContent();
+		PngEncoder encoder = new PngEncoder(9);
+		BufferedImage gradient = new BufferedImage(300, 10, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < 300; x++) {
+			gradient.setRGB(x, 0, x * 0x010203);
+		}
+		for (BufferedImage image : Arrays.asList(new QRBarcode().createImage(content, "png"),
+				new QRSwissBarcode(true).createImage(content, "png"),
+				new BitMatrixRenderer(BufferedImage.TYPE_BYTE_GRAY).render(new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, 100, 100)))) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			Assert.assertTrue(encoder.write(image, os));
+			BufferedImage result = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+			for (int y = 0; y < image.getHeight(); y++) {
+				for (int x = 0; x < image.getWidth(); x++) {
+					Assert.assertEquals(image.getRGB(x, y), result.getRGB(x, y));
+				}
+			}
+		}
+		// more than 256 colors are not supported
+		Assert.assertFalse(encoder.write(gradient, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testPngEncoderSubimage() throws Exception {
+		PngEncoder encoder = new PngEncoder();
+		for (int type : new int[] { BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_3BYTE_BGR }) {
+			BufferedImage parent = new BufferedImage(120, 60, type);
+			Graphics graphics = parent.getGraphics();
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, 120, 60);
+			graphics.setColor(Color.BLUE);
+			graphics.fillRect(5, 5, 30, 20);
+			graphics.setColor(Color.BLACK);
+			graphics.fillRect(50, 10, 40, 35);
+			// the rows of a sub image are longer than its width
+			for (BufferedImage image : Arrays.asList(parent.getSubimage(0, 0, 70, 40), parent.getSubimage(20, 7, 50, 30))) {
+				ByteArrayOutputStream os = new ByteArrayOutputStream();
+				Assert.assertTrue(encoder.write(image, os));
+				BufferedImage result = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+				Assert.assertEquals(image.getWidth(), result.getWidth());
+				Assert.assertEquals(image.getHeight(), result.getHeight());
+				for (int y = 0; y < image.getHeight(); y++) {
+					for (int x = 0; x < image.getWidth(); x++) {
+						Assert.assertEquals(image.getRGB(x, y), result.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPngEncoderDeflateLevel() {
+		new PngEncoder().setDeflateLevel(10);
+	}
+
 }